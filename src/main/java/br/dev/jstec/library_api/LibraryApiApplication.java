@@ -2,19 +2,25 @@ package br.dev.jstec.library_api;
 
 
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.config.LibraryProperties;
+
 
 @SpringBootApplication
+@EnableCaching
+@EnableConfigurationProperties(LibraryProperties.class)
 public class LibraryApiApplication {
 	
 	
 	@Bean
-	public ModelMapper modelMapper() {
-		return new ModelMapper();
+	public BookMapper bookMapper() {
+		return new BookMapper();
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,31 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Selects books by ids or, when ids is null, by a filter with the same rules as
+ * GET /api/books. Title and author are the new values of bulk-update; null keeps
+ * the current value.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookBulkRequestDTO {
+
+	private List<Integer> ids;
+
+	private BookDTO filter;
+
+	private String title;
+
+	private String author;
+
+}
@@ -0,0 +1,27 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookCreateStatusDTO {
+
+	private String id;
+
+	private String status;
+
+	private BookDTO book;
+
+	/** same errors as ApiErrors, for REJECTED and FAILED */
+	private List<String> errors;
+
+}
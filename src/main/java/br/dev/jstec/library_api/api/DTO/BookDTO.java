@@ -2,6 +2,8 @@ package br.dev.jstec.library_api.api.DTO;
 
 import javax.validation.constraints.NotEmpty;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -12,7 +14,7 @@ import lombok.Setter;
 
 @Getter
 @Setter
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class BookDTO {
@@ -27,6 +29,12 @@ public class BookDTO {
 	
 	@NotEmpty
 	private String isbn;
+
+	/**
+	 * Not part of the JSON: it travels in the ETag header.
+	 */
+	@JsonIgnore
+	private Long version;
 	
 	
 	
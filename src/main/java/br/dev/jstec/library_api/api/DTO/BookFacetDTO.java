@@ -0,0 +1,20 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookFacetDTO {
+
+	private String value;
+
+	private long count;
+
+}
@@ -0,0 +1,25 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookMultiGetItemDTO {
+
+	public static final String FOUND = "FOUND";
+	public static final String NOT_FOUND = "NOT_FOUND";
+
+	private Integer id;
+
+	private String status;
+
+	private BookDTO book;
+
+}
@@ -0,0 +1,26 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookSliceDTO {
+
+	private List<BookDTO> content;
+
+	private int size;
+
+	private boolean hasNext;
+
+	private String nextCursor;
+
+}
@@ -0,0 +1,24 @@
+package br.dev.jstec.library_api.api.DTO;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BookStatsDTO {
+
+	private long total;
+
+	private List<BookFacetDTO> authors;
+
+	private List<BookFacetDTO> isbnPrefixes;
+
+}
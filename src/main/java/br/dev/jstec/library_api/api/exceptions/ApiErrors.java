@@ -26,6 +26,12 @@ public class ApiErrors {
 
 
 
+	public ApiErrors(String error) {
+		this.errors = Arrays.asList(error);
+	}
+
+
+
 	public List<String> getErrors() {
 		return errors;
 	}
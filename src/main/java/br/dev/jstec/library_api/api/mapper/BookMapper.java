@@ -0,0 +1,73 @@
+package br.dev.jstec.library_api.api.mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.DTO.BookFacetDTO;
+import br.dev.jstec.library_api.api.DTO.BookStatsDTO;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.BookStats;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * Hand written mapping between {@link Book} and {@link BookDTO}.
+ * 
+ * Plain getters/setters only: no reflection and no type map lookups per call,
+ * so the cost of mapping a page is one allocation per row.
+ */
+public class BookMapper {
+
+	public Book toEntity(BookDTO dto) {
+		if (dto == null) {
+			return null;
+		}
+		Book book = new Book();
+		book.setId(dto.getId());
+		book.setTitle(dto.getTitle());
+		book.setAuthor(dto.getAuthor());
+		book.setIsbn(dto.getIsbn());
+		return book;
+	}
+
+	public BookDTO toDTO(Book book) {
+		if (book == null) {
+			return null;
+		}
+		BookDTO dto = new BookDTO();
+		dto.setId(book.getId());
+		dto.setTitle(book.getTitle());
+		dto.setAuthor(book.getAuthor());
+		dto.setIsbn(book.getIsbn());
+		dto.setVersion(book.getVersion());
+		return dto;
+	}
+
+	public List<BookDTO> toDTOList(List<Book> books) {
+		List<BookDTO> list = new ArrayList<>(books.size());
+		for (Book book : books) {
+			list.add(toDTO(book));
+		}
+		return list;
+	}
+
+	public BookStatsDTO toStatsDTO(BookStats stats) {
+		if (stats == null) {
+			return null;
+		}
+		BookStatsDTO dto = new BookStatsDTO();
+		dto.setTotal(stats.getTotal());
+		dto.setAuthors(toFacetDTOList(stats.getAuthors()));
+		dto.setIsbnPrefixes(toFacetDTOList(stats.getIsbnPrefixes()));
+		return dto;
+	}
+
+	private List<BookFacetDTO> toFacetDTOList(List<BookFacet> facets) {
+		List<BookFacetDTO> list = new ArrayList<>(facets.size());
+		for (BookFacet facet : facets) {
+			list.add(new BookFacetDTO(facet.getValue(), facet.getCount()));
+		}
+		return list;
+	}
+
+}
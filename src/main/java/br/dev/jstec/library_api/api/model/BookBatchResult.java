@@ -0,0 +1,31 @@
+package br.dev.jstec.library_api.api.model;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one book of a batch create, in the same position as it was sent.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookBatchResult {
+
+	private final Book book;
+
+	private final String error;
+
+	public static BookBatchResult created(Book book) {
+		return new BookBatchResult(book, null);
+	}
+
+	public static BookBatchResult rejected(Book book, String error) {
+		return new BookBatchResult(book, error);
+	}
+
+	public boolean isCreated() {
+		return error == null;
+	}
+
+}
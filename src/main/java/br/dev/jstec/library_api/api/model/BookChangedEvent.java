@@ -0,0 +1,50 @@
+package br.dev.jstec.library_api.api.model;
+
+import java.util.Collections;
+import java.util.List;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by BookService after books are written, so that in-memory
+ * structures derived from the table can follow it.
+ */
+@Getter
+@AllArgsConstructor
+public class BookChangedEvent {
+
+	public enum Type {
+		SAVED, UPDATED, DELETED
+	}
+
+	private final Type type;
+
+	private final List<Book> books;
+
+	public static BookChangedEvent saved(List<Book> books) {
+		return new BookChangedEvent(Type.SAVED, books);
+	}
+
+	public static BookChangedEvent saved(Book book) {
+		return saved(Collections.singletonList(book));
+	}
+
+	public static BookChangedEvent updated(Book book) {
+		return updated(Collections.singletonList(book));
+	}
+
+	public static BookChangedEvent updated(List<Book> books) {
+		return new BookChangedEvent(Type.UPDATED, books);
+	}
+
+	public static BookChangedEvent deleted(Book book) {
+		return deleted(Collections.singletonList(book));
+	}
+
+	public static BookChangedEvent deleted(List<Book> books) {
+		return new BookChangedEvent(Type.DELETED, books);
+	}
+
+}
@@ -0,0 +1,49 @@
+package br.dev.jstec.library_api.api.model;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Where a book sent to POST /api/books/async is: waiting in the queue, or
+ * written (or not) by the last flush.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookCreateStatus {
+
+	public enum State {
+		PENDING,
+		CREATED,
+		/** refused by a business rule, such as a duplicated isbn */
+		REJECTED,
+		/** the flush itself failed; the book was not saved and may be sent again */
+		FAILED
+	}
+
+	private final String id;
+
+	private final State state;
+
+	private final Book book;
+
+	private final String error;
+
+	public static BookCreateStatus pending(String id, Book book) {
+		return new BookCreateStatus(id, State.PENDING, book, null);
+	}
+
+	public static BookCreateStatus created(String id, Book book) {
+		return new BookCreateStatus(id, State.CREATED, book, null);
+	}
+
+	public static BookCreateStatus rejected(String id, Book book, String error) {
+		return new BookCreateStatus(id, State.REJECTED, book, error);
+	}
+
+	public static BookCreateStatus failed(String id, Book book, String error) {
+		return new BookCreateStatus(id, State.FAILED, book, error);
+	}
+
+}
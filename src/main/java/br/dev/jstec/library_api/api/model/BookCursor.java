@@ -0,0 +1,91 @@
+package br.dev.jstec.library_api.api.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.springframework.data.domain.Sort;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Position of a keyset (seek) scroll over books: the sort key and id of the
+ * last book returned. Sent to clients as an opaque url-safe token.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class BookCursor {
+
+	public static final List<String> SORTABLE = Arrays.asList("id", "title", "author", "isbn");
+
+	private static final String INVALID_CURSOR = "Cursor inválido";
+
+	private final String property;
+
+	private final Sort.Direction direction;
+
+	private final Integer lastId;
+
+	private final String lastValue;
+
+	public static BookCursor first(String property, Sort.Direction direction) {
+		if (!SORTABLE.contains(property)) {
+			throw new BusinessException("Ordenação não suportada: " + property);
+		}
+		return new BookCursor(property, direction, null, null);
+	}
+
+	public static BookCursor decode(String token) {
+		String[] parts;
+		try {
+			parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4);
+		} catch (IllegalArgumentException e) {
+			throw new BusinessException(INVALID_CURSOR);
+		}
+		if (parts.length != 4 || !SORTABLE.contains(parts[0])) {
+			throw new BusinessException(INVALID_CURSOR);
+		}
+		try {
+			return new BookCursor(parts[0], Sort.Direction.fromString(parts[1]), Integer.valueOf(parts[2]), parts[3]);
+		} catch (IllegalArgumentException e) {
+			throw new BusinessException(INVALID_CURSOR);
+		}
+	}
+
+	/**
+	 * Cursor that continues right after the given book.
+	 */
+	public BookCursor next(Book last) {
+		return new BookCursor(property, direction, last.getId(), isById() ? "" : valueOf(last));
+	}
+
+	public String encode() {
+		String raw = property + "|" + direction.name() + "|" + lastId + "|" + lastValue;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public boolean isById() {
+		return "id".equals(property);
+	}
+
+	public boolean isFirst() {
+		return lastId == null;
+	}
+
+	private String valueOf(Book book) {
+		switch (property) {
+		case "title":
+			return book.getTitle();
+		case "author":
+			return book.getAuthor();
+		default:
+			return book.getIsbn();
+		}
+	}
+
+}
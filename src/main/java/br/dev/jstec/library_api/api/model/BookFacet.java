@@ -0,0 +1,17 @@
+package br.dev.jstec.library_api.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Number of books sharing a value, built directly by a GROUP BY query.
+ */
+@Getter
+@AllArgsConstructor
+public class BookFacet {
+
+	private final String value;
+
+	private final Long count;
+
+}
@@ -0,0 +1,21 @@
+package br.dev.jstec.library_api.api.model;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Aggregates over the books matching a filter, most frequent values first.
+ */
+@Getter
+@AllArgsConstructor
+public class BookStats {
+
+	private final long total;
+
+	private final List<BookFacet> authors;
+
+	private final List<BookFacet> isbnPrefixes;
+
+}
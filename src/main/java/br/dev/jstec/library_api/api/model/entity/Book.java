@@ -1,11 +1,22 @@
 package br.dev.jstec.library_api.api.model.entity;
 
+import java.time.Instant;
+
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,15 +24,26 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Book.CACHE_REGION)
+@Table(uniqueConstraints = @UniqueConstraint(name = Book.ISBN_CONSTRAINT, columnNames = "isbn"))
 public class Book {
 
+	public static final String ISBN_CONSTRAINT = "uk_book_isbn";
+
+	/**
+	 * Second-level cache region, sized in application.conf.
+	 */
+	public static final String CACHE_REGION = "book";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@org.springframework.data.annotation.Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+	@SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
 	@Column
 	private Integer id;
 	
@@ -33,4 +55,21 @@ public class Book {
 	
 	@Column
 	private String isbn;
+
+	/**
+	 * Incremented on every update; the ETag of the book and the If-Match check of PUT.
+	 */
+	@Version
+	@org.springframework.data.annotation.Version
+	@Column(nullable = false)
+	private Long version;
+
+	@Column
+	private Instant lastModified;
+
+	@PrePersist
+	@PreUpdate
+	void touch() {
+		lastModified = Instant.now();
+	}
 }
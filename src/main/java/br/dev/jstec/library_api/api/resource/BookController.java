@@ -1,13 +1,21 @@
 package br.dev.jstec.library_api.api.resource;
 
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
 
-import org.modelmapper.ModelMapper;
+import org.springframework.boot.autoconfigure.data.web.SpringDataWebProperties;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,75 +25,381 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import br.dev.jstec.library_api.api.DTO.BookBatchItemDTO;
+import br.dev.jstec.library_api.api.DTO.BookBulkRequestDTO;
+import br.dev.jstec.library_api.api.DTO.BookBulkResultDTO;
+import br.dev.jstec.library_api.api.DTO.BookCreateStatusDTO;
 import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.DTO.BookMultiGetItemDTO;
+import br.dev.jstec.library_api.api.DTO.BookSliceDTO;
+import br.dev.jstec.library_api.api.DTO.BookStatsDTO;
 import br.dev.jstec.library_api.api.exceptions.ApiErrors;
 import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCreateStatus;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookStats;
 import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookAsyncService;
+import br.dev.jstec.library_api.api.service.BookBulkService;
 import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.service.impl.BookServiceImpl;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/books")
+@Profile("!reactive")
 public class BookController {
+
+	public static final String ERRORS = "library.books.errors";
 	
 	private BookService service;
-	private ModelMapper modelMapper;
+	private Optional<BookBulkService> bulkService;
+	private BookAsyncService asyncService;
+	private BookMapper mapper;
+	private Validator validator;
+	private LibraryProperties properties;
+	private ObjectMapper objectMapper;
+	private BookJsonCache jsonCache;
+	private SpringDataWebProperties dataWebProperties;
+	private Counter validationErrors;
+	private Counter duplicatedIsbnErrors;
+	private Counter businessErrors;
 	
-	public BookController(BookService service, ModelMapper mapper) {
+	public BookController(BookService service, Optional<BookBulkService> bulkService, BookAsyncService asyncService,
+			BookMapper mapper, Validator validator, LibraryProperties properties, ObjectMapper objectMapper,
+			BookJsonCache jsonCache, SpringDataWebProperties dataWebProperties, MeterRegistry registry) {
 		this.service = service;
-		this.modelMapper = mapper;
+		this.bulkService = bulkService;
+		this.asyncService = asyncService;
+		this.mapper = mapper;
+		this.validator = validator;
+		this.properties = properties;
+		this.objectMapper = objectMapper;
+		this.jsonCache = jsonCache;
+		this.dataWebProperties = dataWebProperties;
+		this.validationErrors = registry.counter(ERRORS, "type", "validation");
+		this.duplicatedIsbnErrors = registry.counter(ERRORS, "type", "duplicated_isbn");
+		this.businessErrors = registry.counter(ERRORS, "type", "business");
 	}
 
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
 	public BookDTO create( @RequestBody @Valid BookDTO dto ) {
-		Book entity = modelMapper.map(dto, Book.class);
+		Book entity = mapper.toEntity(dto);
 		
 
 		entity = service.save(entity);
-		return modelMapper.map(entity, BookDTO.class);
+		return mapper.toDTO(entity);
+	}
+	
+	@PostMapping("batch")
+	@ResponseStatus(HttpStatus.OK)
+	public List<BookBatchItemDTO> createBatch( @RequestBody List<BookDTO> dtos ) {
+		int maxSize = properties.getBatch().getMaxSize();
+		if (dtos.size() > maxSize) {
+			throw new BusinessException("O lote excede o limite de " + maxSize + " livros");
+		}
+
+		BookBatchItemDTO[] items = new BookBatchItemDTO[dtos.size()];
+		List<Book> books = new ArrayList<>(dtos.size());
+		List<Integer> positions = new ArrayList<>(dtos.size());
+		for (int i = 0; i < dtos.size(); i++) {
+			BookDTO dto = dtos.get(i);
+			if (dto == null) {
+				items[i] = rejected(i, null, Collections.singletonList("O livro não pode ser nulo"));
+				continue;
+			}
+			Set<ConstraintViolation<BookDTO>> violations = validator.validate(dto);
+			if (violations.isEmpty()) {
+				books.add(mapper.toEntity(dto));
+				positions.add(i);
+			} else {
+				List<String> errors = new ArrayList<>(violations.size());
+				violations.forEach(violation -> errors.add(violation.getPropertyPath() + " " + violation.getMessage()));
+				items[i] = rejected(i, dto, errors);
+			}
+		}
+
+		if (!books.isEmpty()) {
+			List<BookBatchResult> results = service.saveAll(books);
+			for (int j = 0; j < results.size(); j++) {
+				int index = positions.get(j);
+				BookBatchResult result = results.get(j);
+				items[index] = result.isCreated()
+						? BookBatchItemDTO.builder()
+								.index(index)
+								.status(BookBatchItemDTO.CREATED)
+								.book(mapper.toDTO(result.getBook()))
+								.build()
+						: rejected(index, dtos.get(index), Collections.singletonList(result.getError()));
+			}
+		}
+
+		return Arrays.asList(items);
+	}
+
+	@PostMapping("async")
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	public BookCreateStatusDTO createAsync( @RequestBody @Valid BookDTO dto, HttpServletResponse response ) {
+
+		// saved later by the writer together with other queued books; the Location tells the outcome
+		BookCreateStatus status = asyncService.submit(mapper.toEntity(dto)).orElseThrow(() -> {
+			response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+			return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Fila de cadastro cheia");
+		});
+		response.setHeader(HttpHeaders.LOCATION, "/api/books/async/" + status.getId());
+		return toStatusDTO(status);
+	}
+
+	@GetMapping("async/{id}")
+	public BookCreateStatusDTO createStatus(@PathVariable String id) {
+
+		return asyncService.status(id)
+				.map(this::toStatusDTO)
+				.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND));
+	}
+
+	private BookCreateStatusDTO toStatusDTO(BookCreateStatus status) {
+		return BookCreateStatusDTO.builder()
+				.id(status.getId())
+				.status(status.getState().name())
+				.book(mapper.toDTO(status.getBook()))
+				.errors(status.getError() == null ? null : new ApiErrors(status.getError()).getErrors())
+				.build();
+	}
+
+	@PostMapping("bulk-delete")
+	@ResponseStatus(HttpStatus.OK)
+	public BookBulkResultDTO bulkDelete( @RequestBody BookBulkRequestDTO request ) {
+
+		long affected = bulkService().delete(request.getIds(), mapper.toEntity(request.getFilter()));
+		return new BookBulkResultDTO(affected);
+	}
+
+	@PostMapping("bulk-update")
+	@ResponseStatus(HttpStatus.OK)
+	public BookBulkResultDTO bulkUpdate( @RequestBody BookBulkRequestDTO request ) {
+
+		Book changes = Book.builder().title(request.getTitle()).author(request.getAuthor()).build();
+		long affected = bulkService().update(request.getIds(), mapper.toEntity(request.getFilter()), changes);
+		return new BookBulkResultDTO(affected);
+	}
+
+	// statements over the single JPA table, absent with library.sharding.enabled=true
+	private BookBulkService bulkService() {
+		return bulkService.orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED,
+				"Operação em massa indisponível com armazenamento particionado"));
+	}
+
+	private BookBatchItemDTO rejected(int index, BookDTO dto, List<String> errors) {
+		return BookBatchItemDTO.builder()
+				.index(index)
+				.status(BookBatchItemDTO.REJECTED)
+				.book(dto)
+				.errors(errors)
+				.build();
 	}
 	
 	@GetMapping("{id}")
-	public BookDTO get(@PathVariable Integer id) {
+	public BookDTO get(@PathVariable Integer id, WebRequest request, HttpServletResponse response)
+			throws IOException {
 		
-		return service
+		// getById is cached, so a matching If-None-Match is answered with 304 without the
+		// database, the mapping or the serialization
+		Book book = service
 					.getById(id)
-					.map(book -> modelMapper.map(book, BookDTO.class))
 					.orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
-		
+		if (request.checkNotModified(BookETags.of(book), BookETags.lastModified(book))) {
+			return null;
+		}
+		if (jsonCache.write(book, response)) {
+			return null;
+		}
+		return mapper.toDTO(book);
 			
 	}
+	@GetMapping(params = "ids")
+	public List<BookMultiGetItemDTO> getMany(@RequestParam List<Integer> ids) {
+
+		return multiGet(ids);
+	}
+
+	@PostMapping("multi-get")
+	@ResponseStatus(HttpStatus.OK)
+	public List<BookMultiGetItemDTO> getManyByBody( @RequestBody List<Integer> ids ) {
+
+		return multiGet(ids);
+	}
+
+	private List<BookMultiGetItemDTO> multiGet(List<Integer> ids) {
+		int maxIds = properties.getMultiGet().getMaxIds();
+		if (ids.size() > maxIds) {
+			throw new BusinessException("A consulta excede o limite de " + maxIds + " ids");
+		}
+
+		// one item per requested id, in the same order, so the client can zip them
+		List<Optional<Book>> books = service.getByIds(ids);
+		List<BookMultiGetItemDTO> items = new ArrayList<>(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			items.add(books.get(i)
+					.map(book -> BookMultiGetItemDTO.builder()
+							.id(book.getId())
+							.status(BookMultiGetItemDTO.FOUND)
+							.book(mapper.toDTO(book))
+							.build())
+					.orElse(BookMultiGetItemDTO.builder()
+							.id(ids.get(i))
+							.status(BookMultiGetItemDTO.NOT_FOUND)
+							.build()));
+		}
+		return items;
+	}
+
 	@GetMapping()
-	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest) {
+	public Page<BookDTO> find(BookDTO dto, Pageable pageRequest, WebRequest request) {
+
+		// rows come from the database as DTOs already, one object per book
+		Page<BookDTO> result = service.findDTOs(mapper.toEntity(dto), pageRequest);
+		// no Last-Modified here: removing a book changes the page without a newer timestamp
+		if (request.checkNotModified(BookETags.of(result))) {
+			return null;
+		}
+		return result;
+
+	}
+	
+	@GetMapping("stats")
+	public BookStatsDTO stats(BookDTO dto, @RequestParam(defaultValue = "10") int top) {
+
+		int maxTop = properties.getStats().getMaxTop();
+		if (top < 1 || top > maxTop) {
+			throw new BusinessException("O top deve estar entre 1 e " + maxTop);
+		}
+		BookStats stats = service.stats(mapper.toEntity(dto), top, properties.getStats().getIsbnPrefixLength());
+		return mapper.toStatsDTO(stats);
+	}
 
-		Book filter = modelMapper.map(dto, Book.class);
-		Page<Book> result = service.find(filter, pageRequest);
-		List<BookDTO> list = result.getContent()
-				.stream()
-				.map(entity -> modelMapper.map(entity, BookDTO.class))
-				.collect(Collectors.toList());
+	@GetMapping("scroll")
+	public BookSliceDTO scroll(BookDTO dto,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "20") int size,
+			@RequestParam(defaultValue = "id") String sort,
+			@RequestParam(defaultValue = "ASC") Sort.Direction direction) {
 
-		return new PageImpl<BookDTO>(list, pageRequest, result.getTotalElements() );
+		if (size < 1) {
+			throw new BusinessException("O tamanho deve ser maior que zero");
+		}
+		// same cap as the Pageable of GET /api/books
+		size = Math.min(size, dataWebProperties.getPageable().getMaxPageSize());
+		BookCursor position = cursor == null ? BookCursor.first(sort, direction) : BookCursor.decode(cursor);
 
+		Slice<Book> result = service.scroll(mapper.toEntity(dto), position, size);
+		List<Book> content = result.getContent();
+		String nextCursor = result.hasNext()
+				? position.next(content.get(content.size() - 1)).encode()
+				: null;
 
+		return BookSliceDTO.builder()
+				.content(mapper.toDTOList(content))
+				.size(content.size())
+				.hasNext(result.hasNext())
+				.nextCursor(nextCursor)
+				.build();
+	}
 
+	@GetMapping("export")
+	public void export(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+			throws IOException {
+
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		if ("csv".equalsIgnoreCase(format)) {
+			response.setContentType("text/csv");
+			Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+			writer.write("id,title,author,isbn\n");
+			service.export(book -> {
+				try {
+					writer.write(String.valueOf(book.getId()));
+					writer.write(',');
+					writeCsvValue(writer, book.getTitle());
+					writer.write(',');
+					writeCsvValue(writer, book.getAuthor());
+					writer.write(',');
+					writeCsvValue(writer, book.getIsbn());
+					writer.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			writer.flush();
+			return;
+		}
+
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+		generator.setRootValueSeparator(null);
+		ObjectWriter writer = objectMapper.writerFor(BookDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		service.export(book -> {
+			try {
+				writer.writeValue(generator, mapper.toDTO(book));
+				generator.writeRaw('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		generator.flush();
+	}
 
+	private void writeCsvValue(Writer writer, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
 	}
 	
 	@DeleteMapping("{id}")
 	@ResponseStatus(HttpStatus.NO_CONTENT)
 	public void delete(@PathVariable Integer id) {
 		
-		Book book = service.getById(id).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));;
-		service.delete(book);
+		if (!service.deleteById(id)) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+		}
 		
 	}
 
@@ -93,14 +407,27 @@ public class BookController {
 	
 	@PutMapping("{id}")
 	@ResponseStatus(HttpStatus.OK)
-	public BookDTO update(@PathVariable Integer id, BookDTO dto) {
+	public BookDTO update(@PathVariable Integer id, BookDTO dto,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			HttpServletResponse response) {
 		
-		return service.getById(id).map( book -> {
-			book.setAuthor(dto.getAuthor());
-			book.setTitle(dto.getTitle());
-			book.setIsbn(dto.getIsbn());
-			book = service.update(book);
-			return modelMapper.map(book, BookDTO.class);
+		Book book = mapper.toEntity(dto);
+		book.setId(id);
+		if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+			// checked by updateById against the stored version: a stale version ends in 412
+			book.setVersion(BookETags.version(ifMatch, id));
+		}
+		
+		return service.updateById(book).map( updated -> {
+			String etag = BookETags.of(updated);
+			if (etag != null) {
+				response.setHeader(HttpHeaders.ETAG, etag);
+			}
+			if (!id.equals(updated.getId())) {
+				// moved to another shard by its new isbn (library.sharding.enabled=true)
+				response.setHeader(HttpHeaders.LOCATION, "/api/books/" + updated.getId());
+			}
+			return mapper.toDTO(updated);
 			
 		}).orElseThrow( () -> new ResponseStatusException(HttpStatus.NOT_FOUND));
 		
@@ -112,6 +439,7 @@ public class BookController {
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	public ApiErrors handleValidationExceptions(MethodArgumentNotValidException ex) {
 		
+		validationErrors.increment();
 		BindingResult bindingResult = ex.getBindingResult();
 		
 		return new ApiErrors(bindingResult);
@@ -123,10 +451,21 @@ public class BookController {
 	@ResponseStatus(HttpStatus.BAD_REQUEST)
 	public ApiErrors handleBusinessExceptions(BusinessException ex) {
 			
+		if (BookServiceImpl.DUPLICATED_ISBN.equals(ex.getMessage())) {
+			duplicatedIsbnErrors.increment();
+		} else {
+			businessErrors.increment();
+		}
 		return new ApiErrors(ex);
 		
 	}
-	
-	
+
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+	public ApiErrors handleConcurrentUpdate(OptimisticLockingFailureException ex) {
+		
+		return new ApiErrors("O livro foi alterado por outra requisição");
+		
+	}
 
 }
@@ -0,0 +1,67 @@
+package br.dev.jstec.library_api.api.resource;
+
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * Strong entity tags derived from {@link Book#getVersion()}, so they can be computed
+ * from a cached book without reading the row or serializing the body.
+ */
+final class BookETags {
+
+	private BookETags() {
+	}
+
+	/**
+	 * "id.version", or null for a book that was never persisted.
+	 */
+	static String of(Book book) {
+		if (book.getVersion() == null) {
+			return null;
+		}
+		return "\"" + book.getId() + "." + book.getVersion() + "\"";
+	}
+
+	/**
+	 * Changes when any book of the page is updated, or when books are added or removed.
+	 */
+	static String of(Page<BookDTO> page) {
+		long hash = page.getTotalElements();
+		for (BookDTO book : page) {
+			if (book.getVersion() == null) {
+				return null;
+			}
+			hash = 31 * hash + book.getId();
+			hash = 31 * hash + book.getVersion();
+		}
+		return "\"p" + Long.toHexString(hash) + "\"";
+	}
+
+	static long lastModified(Book book) {
+		return book.getLastModified() == null ? -1 : book.getLastModified().toEpochMilli();
+	}
+
+	/**
+	 * The version named by an If-Match for the book with the id, checked by the update
+	 * statement. Weak tags never match; anything else unknown is a failed precondition.
+	 */
+	static Long version(String ifMatch, Integer id) {
+		String prefix = "\"" + id + ".";
+		for (String candidate : ifMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith(prefix) && candidate.endsWith("\"") && candidate.length() > prefix.length() + 1) {
+				try {
+					return Long.valueOf(candidate.substring(prefix.length(), candidate.length() - 1));
+				} catch (NumberFormatException e) {
+					// not one of our tags, try the next one
+				}
+			}
+		}
+		throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED);
+	}
+
+}
@@ -0,0 +1,164 @@
+package br.dev.jstec.library_api.api.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+
+/**
+ * The JSON of GET /api/books/{id}, kept already serialized per book id and
+ * version, so a hit is copied to the response without mapping or Jackson.
+ * 
+ * An entry is only used for the version it was written from and is dropped
+ * when the book is updated or deleted. Bounded by library.json-cache.max-size
+ * bytes; with library.json-cache.off-heap the bytes live in direct buffers,
+ * outside the heap the collector scans.
+ */
+@Component
+public class BookJsonCache {
+
+	public static final String REQUESTS = "library.books.json.cache.requests";
+
+	public static final String SIZE = "library.books.json.cache.size";
+
+	private final Cache<Integer, Entry> entries;
+
+	private LibraryProperties.JsonCache properties;
+	private BookMapper mapper;
+	private ObjectWriter writer;
+
+	private final Counter hits;
+	private final Counter misses;
+
+	public BookJsonCache(LibraryProperties properties, BookMapper mapper, ObjectMapper objectMapper,
+			MeterRegistry registry) {
+		this.properties = properties.getJsonCache();
+		this.mapper = mapper;
+		// the same ObjectMapper as the message converters, so the bytes are what they would write
+		this.writer = objectMapper.writerFor(BookDTO.class);
+		this.entries = Caffeine.newBuilder()
+				.maximumWeight(this.properties.getMaxSize().toBytes())
+				.weigher((Integer id, Entry entry) -> entry.size())
+				.build();
+
+		hits = Counter.builder(REQUESTS).tag("result", "hit").register(registry);
+		misses = Counter.builder(REQUESTS).tag("result", "miss").register(registry);
+		Gauge.builder(SIZE, this, cache -> cache.sizeInBytes())
+				.baseUnit("bytes")
+				.tag("storage", this.properties.isOffHeap() ? "off-heap" : "heap")
+				.register(registry);
+		Gauge.builder("library.books.json.cache.entries", entries, Cache::estimatedSize).register(registry);
+	}
+
+	public boolean isEnabled() {
+		return properties.isEnabled();
+	}
+
+	/**
+	 * Writes the JSON of the book to the response, from the cache or serializing
+	 * it once for the next requests. False, with nothing written, when the cache
+	 * is disabled or the version of the book is unknown.
+	 */
+	public boolean write(Book book, HttpServletResponse response) throws IOException {
+		if (!isEnabled() || book.getId() == null || book.getVersion() == null) {
+			return false;
+		}
+
+		Entry entry = entries.getIfPresent(book.getId());
+		if (entry != null && entry.version == book.getVersion()) {
+			hits.increment();
+		} else {
+			misses.increment();
+			entry = serialize(book);
+			entries.put(book.getId(), entry);
+		}
+
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setContentLength(entry.size());
+		entry.writeTo(response.getOutputStream());
+		return true;
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onBookChanged(BookChangedEvent event) {
+		if (event.getType() == BookChangedEvent.Type.SAVED) {
+			return;
+		}
+		for (Book book : event.getBooks()) {
+			entries.invalidate(book.getId());
+		}
+	}
+
+	public long sizeInBytes() {
+		return entries.policy().eviction()
+				.map(eviction -> eviction.weightedSize().orElse(0))
+				.orElse(0L);
+	}
+
+	private Entry serialize(Book book) throws JsonProcessingException {
+		byte[] json = writer.writeValueAsBytes(mapper.toDTO(book));
+		if (!properties.isOffHeap()) {
+			return new Entry(book.getVersion(), json, null);
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect(json.length);
+		buffer.put(json).flip();
+		return new Entry(book.getVersion(), null, buffer);
+	}
+
+	static final class Entry {
+
+		private static final int CHUNK = 8192;
+
+		final long version;
+		final byte[] heap;
+		final ByteBuffer direct;
+
+		Entry(long version, byte[] heap, ByteBuffer direct) {
+			this.version = version;
+			this.heap = heap;
+			this.direct = direct;
+		}
+
+		int size() {
+			return heap != null ? heap.length : direct.capacity();
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			if (heap != null) {
+				out.write(heap);
+				return;
+			}
+			// the servlet stream only takes arrays; each reader copies through its own view
+			ByteBuffer view = direct.duplicate();
+			byte[] chunk = new byte[Math.min(CHUNK, view.remaining())];
+			while (view.hasRemaining()) {
+				int length = Math.min(chunk.length, view.remaining());
+				view.get(chunk, 0, length);
+				out.write(chunk, 0, length);
+			}
+		}
+
+	}
+
+}
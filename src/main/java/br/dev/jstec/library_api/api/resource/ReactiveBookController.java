@@ -0,0 +1,137 @@
+package br.dev.jstec.library_api.api.resource;
+
+import javax.validation.Valid;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.exceptions.ApiErrors;
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.ReactiveBookService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Same contract as {@link BookController}, served on WebFlux when the "reactive" profile is active.
+ */
+@RestController
+@RequestMapping("/api/books")
+@Profile("reactive")
+public class ReactiveBookController {
+
+	private ReactiveBookService service;
+	private BookMapper mapper;
+
+	public ReactiveBookController(ReactiveBookService service, BookMapper mapper) {
+		this.service = service;
+		this.mapper = mapper;
+	}
+
+	@PostMapping
+	@ResponseStatus(HttpStatus.CREATED)
+	public Mono<BookDTO> create( @RequestBody @Valid BookDTO dto ) {
+		return service.save(mapper.toEntity(dto)).map(mapper::toDTO);
+	}
+
+	@GetMapping("{id}")
+	public Mono<BookDTO> get(@PathVariable Integer id, ServerWebExchange exchange) {
+		return service.getById(id)
+				.switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)))
+				.filter(book -> !notModified(exchange, book))
+				.map(mapper::toDTO);
+	}
+
+	/**
+	 * Same Page body as {@link BookController#find}: the page is collected before it is
+	 * written, since totalElements and the other page fields come with the content. Only
+	 * one page is held (at most the Pageable max page size), the rows and the count are
+	 * read concurrently and no thread blocks while waiting. Clients that want the rows
+	 * as they arrive use {@link #export}, which takes the same filters.
+	 */
+	@GetMapping
+	public Mono<Page<BookDTO>> find(BookDTO dto, Pageable pageRequest) {
+		Book filter = mapper.toEntity(dto);
+		return Mono.zip(service.find(filter, pageRequest).collectList(), service.count(filter))
+				.map(result -> new PageImpl<>(mapper.toDTOList(result.getT1()), pageRequest, result.getT2()));
+	}
+
+	/**
+	 * NDJSON like {@link BookController#export}, written while rows arrive from the database and
+	 * accepting the same filters as find. Only the ndjson format is available here.
+	 */
+	@GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public Flux<BookDTO> export(BookDTO dto) {
+		return service.find(mapper.toEntity(dto), Pageable.unpaged()).map(mapper::toDTO);
+	}
+
+	@DeleteMapping("{id}")
+	@ResponseStatus(HttpStatus.NO_CONTENT)
+	public Mono<Void> delete(@PathVariable Integer id) {
+		return service.delete(id)
+				.flatMap(deleted -> deleted
+						? Mono.<Void>empty()
+						: Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
+	}
+
+	@PutMapping("{id}")
+	@ResponseStatus(HttpStatus.OK)
+	public Mono<BookDTO> update(@PathVariable Integer id, BookDTO dto,
+			@RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+		Book book = mapper.toEntity(dto);
+		book.setId(id);
+		if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+			book.setVersion(BookETags.version(ifMatch, id));
+		}
+		return service.update(book)
+				.map(mapper::toDTO)
+				.switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND)));
+	}
+
+	private boolean notModified(ServerWebExchange exchange, Book book) {
+		return book.getLastModified() == null
+				? exchange.checkNotModified(BookETags.of(book))
+				: exchange.checkNotModified(BookETags.of(book), book.getLastModified());
+	}
+
+	@ExceptionHandler(OptimisticLockingFailureException.class)
+	@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+	public ApiErrors handleConcurrentUpdate(OptimisticLockingFailureException ex) {
+		return new ApiErrors("O livro foi alterado por outra requisição");
+	}
+
+	@ExceptionHandler(WebExchangeBindException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public ApiErrors handleValidationExceptions(WebExchangeBindException ex) {
+		return new ApiErrors(ex.getBindingResult());
+	}
+
+	@ExceptionHandler(BusinessException.class)
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	public ApiErrors handleBusinessExceptions(BusinessException ex) {
+		return new ApiErrors(ex);
+	}
+
+}
@@ -0,0 +1,25 @@
+package br.dev.jstec.library_api.api.service;
+
+import java.util.Optional;
+
+import br.dev.jstec.library_api.api.model.BookCreateStatus;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * Write-behind creates: books are queued and saved later, many per transaction,
+ * by a background writer. Each one gets a tracking id to follow its outcome.
+ */
+public interface BookAsyncService {
+
+	/**
+	 * Queues the book. Returns its PENDING status, or empty when the queue is full.
+	 */
+	Optional<BookCreateStatus> submit(Book book);
+
+	/**
+	 * The latest status of the book with this tracking id, while it is remembered
+	 * (library.async-create.status-ttl).
+	 */
+	Optional<BookCreateStatus> status(String id);
+
+}
@@ -0,0 +1,26 @@
+package br.dev.jstec.library_api.api.service;
+
+import java.util.List;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * Writes to many books at once, in chunks of library.bulk.chunk-size books, each
+ * chunk a single statement in its own transaction. A failure leaves the chunks
+ * already committed in place.
+ */
+public interface BookBulkService {
+
+	/**
+	 * Deletes the books with the ids or, when ids is null, every book matching the filter.
+	 * Returns the number of books deleted.
+	 */
+	long delete(List<Integer> ids, Book filter);
+
+	/**
+	 * Sets the non null title and author of the changes on the selected books.
+	 * Returns the number of books updated.
+	 */
+	long update(List<Integer> ids, Book filter, Book changes);
+
+}
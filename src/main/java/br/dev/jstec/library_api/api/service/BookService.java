@@ -1,10 +1,17 @@
 package br.dev.jstec.library_api.api.service;
 
 import org.springframework.data.domain.Pageable;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookStats;
 import br.dev.jstec.library_api.api.model.entity.Book;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 public interface BookService {
 
@@ -12,9 +19,43 @@ public interface BookService {
 
 Optional<Book> getById(Integer id);
 
+    /**
+     * One result per id, in the same order, empty for ids without a book.
+     * Cached books are served first; the rest is read with IN queries.
+     */
+    List<Optional<Book>> getByIds(List<Integer> ids);
+
 void delete(Book book);
 
 Book update(Book book);
 
+    /**
+     * Deletes the book, loading it from the second-level cache when it is there;
+     * false when there is no book with the id.
+     */
+    boolean deleteById(Integer id);
+
+    /**
+     * Updates title, author and isbn, checking the version when the book has one.
+     * Empty when there is no book with the id.
+     */
+    Optional<Book> updateById(Book book);
+
     Page<Book> find(Book filter, Pageable pageRequest);
+
+    /**
+     * Same matches and order as find, read as DTOs without managed entities.
+     */
+    Page<BookDTO> findDTOs(Book filter, Pageable pageRequest);
+
+    List<BookBatchResult> saveAll(List<Book> books);
+
+    void export(Consumer<Book> consumer);
+
+    Slice<Book> scroll(Book filter, BookCursor cursor, int size);
+
+    /**
+     * Total and the {@code top} authors and isbn prefixes of the books matching the filter.
+     */
+    BookStats stats(Book filter, int top, int isbnPrefixLength);
 }
@@ -0,0 +1,29 @@
+package br.dev.jstec.library_api.api.service;
+
+import org.springframework.data.domain.Pageable;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveBookService {
+
+	Mono<Book> save(Book book);
+
+	Mono<Book> getById(Integer id);
+
+	/**
+	 * Emits false when there is no book with the id.
+	 */
+	Mono<Boolean> delete(Integer id);
+
+	/**
+	 * Completes empty when there is no book with the id. A book with a version only
+	 * overwrites that version of the row.
+	 */
+	Mono<Book> update(Book book);
+
+	Flux<Book> find(Book filter, Pageable pageRequest);
+
+	Mono<Long> count(Book filter);
+}
@@ -0,0 +1,29 @@
+package br.dev.jstec.library_api.config;
+
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import br.dev.jstec.library_api.service.impl.BookServiceImpl;
+
+@Configuration
+public class CacheConfiguration {
+
+	/**
+	 * The stats cache expires much sooner than spring.cache.caffeine.spec, so it gets its own
+	 * Caffeine instance. Only applies when spring.cache.type is caffeine.
+	 */
+	@Bean
+	public CacheManagerCustomizer<CaffeineCacheManager> statsCacheCustomizer(LibraryProperties properties) {
+		return cacheManager -> cacheManager.registerCustomCache(BookServiceImpl.STATS_CACHE,
+				Caffeine.newBuilder()
+						.maximumSize(1000)
+						.expireAfterWrite(properties.getStats().getCacheTtl())
+						.recordStats()
+						.build());
+	}
+
+}
@@ -0,0 +1,59 @@
+package br.dev.jstec.library_api.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Two Hikari pools, library.datasource.primary and library.datasource.replica,
+ * each with its own size, behind {@link ReadWriteRoutingDataSource}
+ * (library.routing.enabled=true). Replaces the spring.datasource pool.
+ * 
+ * Needs spring.jpa.open-in-view=false: an EntityManager keeps its connection,
+ * so one open for the whole request would keep the pool of its first
+ * transaction for the writes that follow.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "library.routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration {
+
+	@Bean
+	@ConfigurationProperties("library.datasource.primary")
+	public HikariDataSource primaryDataSource() {
+		return DataSourceBuilder.create().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	@ConfigurationProperties("library.datasource.replica")
+	public HikariDataSource replicaDataSource() {
+		return DataSourceBuilder.create().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	@Primary
+	public DataSource dataSource(LibraryProperties properties, MeterRegistry registry) {
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(ReadWriteRoutingDataSource.Target.PRIMARY, primaryDataSource());
+		targets.put(ReadWriteRoutingDataSource.Target.REPLICA, replicaDataSource());
+
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(properties.getRouting(), registry);
+		routing.setTargetDataSources(targets);
+		routing.setDefaultTargetDataSource(primaryDataSource());
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+
+}
@@ -0,0 +1,343 @@
+package br.dev.jstec.library_api.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "library")
+public class LibraryProperties {
+
+	private Batch batch = new Batch();
+
+	private Export export = new Export();
+
+	private Search search = new Search();
+
+	private Bulk bulk = new Bulk();
+
+	private Stats stats = new Stats();
+
+	private IsbnFilter isbnFilter = new IsbnFilter();
+
+	private AsyncCreate asyncCreate = new AsyncCreate();
+
+	private MultiGet multiGet = new MultiGet();
+
+	private JsonCache jsonCache = new JsonCache();
+
+	private Routing routing = new Routing();
+
+	private Sharding sharding = new Sharding();
+
+	private RateLimit rateLimit = new RateLimit();
+
+	public enum SearchMode {
+		/** in-memory inverted index matching word prefixes, see BookSearchIndex */
+		INDEX,
+		/** case insensitive CONTAINING Example queries on the database */
+		EXAMPLE
+	}
+
+	@Getter
+	@Setter
+	public static class Batch {
+
+		/**
+		 * Maximum number of books accepted by POST /api/books/batch.
+		 */
+		private int maxSize = 1000;
+
+	}
+
+	@Getter
+	@Setter
+	public static class Export {
+
+		/**
+		 * Rows fetched per round-trip while streaming GET /api/books/export.
+		 */
+		private int fetchSize = 500;
+
+	}
+
+	@Getter
+	@Setter
+	public static class Bulk {
+
+		/**
+		 * Books written per statement and transaction by the bulk endpoints.
+		 */
+		private int chunkSize = 500;
+
+	}
+
+	@Getter
+	@Setter
+	public static class Stats {
+
+		/**
+		 * Largest number of facet values GET /api/books/stats returns per facet.
+		 */
+		private int maxTop = 100;
+
+		/**
+		 * Characters of the isbn grouped by the isbn prefix facet.
+		 */
+		private int isbnPrefixLength = 7;
+
+		/**
+		 * How long a result is reused for the same filter; 0 disables the cache.
+		 */
+		private Duration cacheTtl = Duration.ofSeconds(10);
+
+	}
+
+	@Getter
+	@Setter
+	public static class IsbnFilter {
+
+		/**
+		 * Whether POST /api/books/batch skips the isbn lookup for isbns the Bloom filter has never seen.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Wanted false positive rate when the filter holds its expected number of isbns.
+		 */
+		private double falsePositiveRate = 0.01;
+
+		/**
+		 * Minimum number of isbns the filter is sized for; a rebuild sizes it for
+		 * twice the rows of the table when that is larger.
+		 */
+		private long expectedInsertions = 1_000_000;
+
+	}
+
+	@Getter
+	@Setter
+	public static class AsyncCreate {
+
+		/**
+		 * Books POST /api/books/async can hold before answering 429.
+		 */
+		private int queueCapacity = 10_000;
+
+		/**
+		 * Most books the writer saves per transaction.
+		 */
+		private int batchSize = 500;
+
+		/**
+		 * How long the writer waits for the first book of a batch before checking again.
+		 */
+		private Duration pollTimeout = Duration.ofMillis(200);
+
+		/**
+		 * How long the outcome of a book stays available at GET /api/books/async/{id}.
+		 */
+		private Duration statusTtl = Duration.ofMinutes(10);
+
+		/**
+		 * Most finished outcomes kept at once (Caffeine's size eviction); books still
+		 * queued or being written are kept apart and never evicted.
+		 */
+		private long maxStatuses = 100_000;
+
+	}
+
+	@Getter
+	@Setter
+	public static class MultiGet {
+
+		/**
+		 * Maximum number of ids accepted by GET /api/books?ids= and POST /api/books/multi-get.
+		 */
+		private int maxIds = 1000;
+
+	}
+
+	@Getter
+	@Setter
+	public static class JsonCache {
+
+		/**
+		 * Whether GET /api/books/{id} answers from already serialized JSON.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * Most JSON bytes kept; the least used books are dropped first.
+		 */
+		private DataSize maxSize = DataSize.ofMegabytes(64);
+
+		/**
+		 * Keep the bytes in direct buffers instead of the heap.
+		 */
+		private boolean offHeap = false;
+
+	}
+
+	@Getter
+	@Setter
+	public static class Routing {
+
+		/**
+		 * How far the replica may be behind the primary.
+		 */
+		private Duration replicaLag = Duration.ZERO;
+
+		/**
+		 * Staleness accepted per operation, by service method name; operations
+		 * not listed accept any.
+		 */
+		private Map<String, Duration> maxLag = new HashMap<>();
+
+	}
+
+	@Getter
+	@Setter
+	public static class Sharding {
+
+		/**
+		 * Number of shards; changing it moves almost every book to another shard,
+		 * so it is fixed for the life of the data.
+		 */
+		private int count = 4;
+
+		/**
+		 * JDBC url of each shard, {shard} replaced by its number.
+		 */
+		private String url = "jdbc:h2:mem:library-shard-{shard};DB_CLOSE_DELAY=-1";
+
+		private String username = "sa";
+
+		private String password = "";
+
+		/**
+		 * Connections per shard.
+		 */
+		private int poolSize = 10;
+
+		/**
+		 * Threads running the per-shard queries of searches.
+		 */
+		private int searchThreads = 16;
+
+		/**
+		 * Shard queries waiting for a thread before the request thread runs them itself.
+		 */
+		private int searchQueueCapacity = 256;
+
+		/**
+		 * How long a search waits for all shards.
+		 */
+		private Duration searchTimeout = Duration.ofSeconds(5);
+
+		/**
+		 * Deepest row a page of GET /api/books may end at: every shard reads and
+		 * returns that many rows to merge. Deeper pages are refused in favour of
+		 * /api/books/scroll.
+		 */
+		private int maxOffset = 10_000;
+
+	}
+
+	@Getter
+	@Setter
+	public static class RateLimit {
+
+		/**
+		 * Token buckets per client and the concurrency limit in front of /api/books.
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * GET /api/books/{id}, ?ids= and POST multi-get.
+		 */
+		private Budget reads = new Budget(200, 400);
+
+		/**
+		 * GET /api/books, stats, scroll and export.
+		 */
+		private Budget searches = new Budget(20, 40);
+
+		/**
+		 * POST, PUT and DELETE, including batch, bulk and async creates.
+		 */
+		private Budget writes = new Budget(20, 40);
+
+		/**
+		 * Remote addresses whose buckets are kept; the least recently used are dropped beyond it.
+		 */
+		private long maxClients = 100_000;
+
+		/**
+		 * A client's buckets are dropped (refilled) after this long without requests.
+		 */
+		private Duration idleTimeout = Duration.ofMinutes(10);
+
+		/**
+		 * Requests served at the same time, exports apart; keep it plus max-concurrent-exports
+		 * at or below the connection pool size (10 by default) so requests are shed before
+		 * they queue for a connection (0 disables).
+		 */
+		private int maxConcurrentRequests = 8;
+
+		/**
+		 * GET /api/books/export streams running at the same time; each holds a connection
+		 * until the whole catalog is written (0 disables).
+		 */
+		private int maxConcurrentExports = 2;
+
+		/**
+		 * How long a request waits for a free slot before it gets 503.
+		 */
+		private Duration maxConcurrencyWait = Duration.ofMillis(50);
+
+	}
+
+	@Getter
+	@Setter
+	public static class Budget {
+
+		/**
+		 * Tokens added per second.
+		 */
+		private double permitsPerSecond;
+
+		/**
+		 * Bucket size, i.e. requests accepted at once after being idle.
+		 */
+		private int burst;
+
+		public Budget() {
+		}
+
+		public Budget(double permitsPerSecond, int burst) {
+			this.permitsPerSecond = permitsPerSecond;
+			this.burst = burst;
+		}
+
+	}
+
+	@Getter
+	@Setter
+	public static class Search {
+
+		/**
+		 * How GET /api/books filters by title, author and isbn.
+		 */
+		private SearchMode mode = SearchMode.EXAMPLE;
+
+	}
+
+}
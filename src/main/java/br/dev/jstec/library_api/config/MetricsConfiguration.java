@@ -0,0 +1,29 @@
+package br.dev.jstec.library_api.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@Configuration
+public class MetricsConfiguration {
+
+	/**
+	 * Makes @Timed work on any bean, e.g. BookServiceImpl.
+	 */
+	@Bean
+	public TimedAspect timedAspect(MeterRegistry registry) {
+		return new TimedAspect(registry);
+	}
+
+	@Bean
+	public FilterRegistrationBean<StatementCountFilter> statementCountFilter(MeterRegistry registry) {
+		FilterRegistrationBean<StatementCountFilter> registration =
+				new FilterRegistrationBean<>(new StatementCountFilter(registry));
+		registration.addUrlPatterns("/api/*");
+		return registration;
+	}
+
+}
@@ -0,0 +1,30 @@
+package br.dev.jstec.library_api.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Rate limits and sheds /api/books requests (library.rate-limit.enabled=true),
+ * see {@link RateLimitFilter}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "library.rate-limit", name = "enabled", havingValue = "true")
+public class RateLimitConfiguration {
+
+	@Bean
+	public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(LibraryProperties properties,
+			MeterRegistry registry) {
+		FilterRegistrationBean<RateLimitFilter> registration =
+				new FilterRegistrationBean<>(new RateLimitFilter(properties.getRateLimit(), registry));
+		registration.addUrlPatterns("/api/books", "/api/books/*");
+		// before any other filter does work for a request that is going to be refused
+		registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+		return registration;
+	}
+
+}
@@ -0,0 +1,225 @@
+package br.dev.jstec.library_api.config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Admission control for /api/books, before any work is done for the request:
+ *
+ * 1. a {@link TokenBucket} per remote address and kind of operation, so one
+ * client paging through searches does not use up the budget of its reads or
+ * writes, nor other clients' budgets; over budget gets 429 with Retry-After.
+ * Nothing authenticates the requests, so a header naming the client would let
+ * anyone get fresh buckets by changing it, and push real clients' buckets out;
+ * 2. a global limit of requests in progress, kept at or below the connection
+ * pool size, so excess requests get 503 right away instead of queueing for a
+ * connection until Hikari's connection timeout (30 s by default). GET
+ * /api/books/export holds its slot for the whole stream, so exports have a
+ * small limit of their own and never take the slots of other requests.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	public static final String REQUESTS = "library.ratelimit.requests";
+	public static final String ADMISSIONS = "library.concurrency.requests";
+	public static final String IN_FLIGHT = "library.concurrency.in.flight";
+	public static final String EXPORTS = "library.concurrency.exports";
+	public static final String EXPORTS_IN_FLIGHT = "library.concurrency.exports.in.flight";
+
+	private static final byte[] LIMITED = body("Limite de requisições excedido, tente novamente");
+	private static final byte[] OVERLOADED = body("Serviço sobrecarregado, tente novamente");
+
+	public enum Operation {
+		READ, SEARCH, WRITE
+	}
+
+	private final Map<Operation, LibraryProperties.Budget> budgets = new EnumMap<>(Operation.class);
+	private final Map<Operation, Cache<String, TokenBucket>> buckets = new EnumMap<>(Operation.class);
+	private final Map<Operation, Counter> allowed = new EnumMap<>(Operation.class);
+	private final Map<Operation, Counter> limited = new EnumMap<>(Operation.class);
+
+	private final Semaphore slots;
+	private final Semaphore exportSlots;
+	private final long maxWait;
+	private final Counter admitted;
+	private final Counter shed;
+	private final Counter exportsAdmitted;
+	private final Counter exportsShed;
+
+	public RateLimitFilter(LibraryProperties.RateLimit properties, MeterRegistry registry) {
+		budgets.put(Operation.READ, properties.getReads());
+		budgets.put(Operation.SEARCH, properties.getSearches());
+		budgets.put(Operation.WRITE, properties.getWrites());
+
+		for (Operation operation : Operation.values()) {
+			buckets.put(operation, Caffeine.newBuilder()
+					.maximumSize(properties.getMaxClients())
+					.expireAfterAccess(properties.getIdleTimeout())
+					.build());
+			String tag = operation.name().toLowerCase(Locale.ROOT);
+			allowed.put(operation, Counter.builder(REQUESTS)
+					.description("Requests checked against the client's token bucket")
+					.tag("operation", tag)
+					.tag("result", "allowed")
+					.register(registry));
+			limited.put(operation, Counter.builder(REQUESTS)
+					.description("Requests checked against the client's token bucket")
+					.tag("operation", tag)
+					.tag("result", "limited")
+					.register(registry));
+		}
+
+		int maxConcurrent = properties.getMaxConcurrentRequests();
+		this.slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+		this.maxWait = properties.getMaxConcurrencyWait().toNanos();
+		this.admitted = Counter.builder(ADMISSIONS)
+				.description("Requests checked against library.rate-limit.max-concurrent-requests")
+				.tag("result", "admitted")
+				.register(registry);
+		this.shed = Counter.builder(ADMISSIONS)
+				.description("Requests checked against library.rate-limit.max-concurrent-requests")
+				.tag("result", "shed")
+				.register(registry);
+		if (slots != null) {
+			Gauge.builder(IN_FLIGHT, slots, s -> maxConcurrent - s.availablePermits())
+					.description("Requests in progress under the concurrency limit")
+					.register(registry);
+		}
+
+		int maxExports = properties.getMaxConcurrentExports();
+		this.exportSlots = maxExports > 0 ? new Semaphore(maxExports) : null;
+		this.exportsAdmitted = Counter.builder(EXPORTS)
+				.description("Exports checked against library.rate-limit.max-concurrent-exports")
+				.tag("result", "admitted")
+				.register(registry);
+		this.exportsShed = Counter.builder(EXPORTS)
+				.description("Exports checked against library.rate-limit.max-concurrent-exports")
+				.tag("result", "shed")
+				.register(registry);
+		if (exportSlots != null) {
+			Gauge.builder(EXPORTS_IN_FLIGHT, exportSlots, s -> maxExports - s.availablePermits())
+					.description("Exports streaming under their concurrency limit")
+					.register(registry);
+		}
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		Operation operation = operation(request);
+		long wait = bucket(operation, request.getRemoteAddr()).tryAcquire(System.nanoTime());
+		if (wait > 0) {
+			limited.get(operation).increment();
+			reject(response, HttpStatus.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(wait) + 1, LIMITED);
+			return;
+		}
+		allowed.get(operation).increment();
+
+		boolean export = isExport(request);
+		Semaphore pool = export ? exportSlots : slots;
+		if (pool == null) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+		if (!acquireSlot(pool)) {
+			(export ? exportsShed : shed).increment();
+			reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, OVERLOADED);
+			return;
+		}
+		(export ? exportsAdmitted : admitted).increment();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			pool.release();
+		}
+	}
+
+	private boolean acquireSlot(Semaphore pool) {
+		if (pool.tryAcquire()) {
+			return true;
+		}
+		try {
+			return maxWait > 0 && pool.tryAcquire(maxWait, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private TokenBucket bucket(Operation operation, String client) {
+		LibraryProperties.Budget budget = budgets.get(operation);
+		return buckets.get(operation).get(client,
+				key -> new TokenBucket(budget.getPermitsPerSecond(), budget.getBurst(), System.nanoTime()));
+	}
+
+	/**
+	 * Maps the request to the BookController endpoint kind by method and path.
+	 */
+	static Operation operation(HttpServletRequest request) {
+		String method = request.getMethod();
+		String last = lastSegment(request);
+
+		if ("GET".equals(method) || "HEAD".equals(method)) {
+			if ("books".equals(last)) {
+				return request.getParameter("ids") != null ? Operation.READ : Operation.SEARCH;
+			}
+			if ("stats".equals(last) || "scroll".equals(last) || "export".equals(last)) {
+				return Operation.SEARCH;
+			}
+			return Operation.READ;
+		}
+		if ("POST".equals(method) && "multi-get".equals(last)) {
+			return Operation.READ;
+		}
+		return Operation.WRITE;
+	}
+
+	static boolean isExport(HttpServletRequest request) {
+		return "GET".equals(request.getMethod()) && "export".equals(lastSegment(request));
+	}
+
+	private static String lastSegment(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		int slash = path.lastIndexOf('/');
+		return slash < 0 ? path : path.substring(slash + 1);
+	}
+
+	private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, byte[] body)
+			throws IOException {
+		response.setStatus(status.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * Same shape as ApiErrors.
+	 */
+	private static byte[] body(String error) {
+		return ("{\"errors\":[\"" + error + "\"]}").getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,86 @@
+package br.dev.jstec.library_api.config;
+
+import java.time.Duration;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sends connections of read-only transactions to the replica and everything
+ * else to the primary. Must sit behind a LazyConnectionDataSourceProxy: the
+ * transaction managers ask for the connection before the transaction is
+ * flagged read-only, the proxy only asks this router at the first statement.
+ * 
+ * An operation (the method name of the transaction, such as getById) listed
+ * in library.routing.max-lag with less than library.routing.replica-lag goes
+ * to the primary while a write committed less than replica-lag ago may still
+ * be missing on the replica.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	public enum Target {
+		PRIMARY, REPLICA
+	}
+
+	public static final String CONNECTIONS = "library.datasource.routing";
+
+	private static final long NEVER = Long.MIN_VALUE;
+
+	private LibraryProperties.Routing properties;
+
+	private volatile long lastWrite = NEVER;
+
+	private final Counter primary;
+	private final Counter replica;
+
+	public ReadWriteRoutingDataSource(LibraryProperties.Routing properties, MeterRegistry registry) {
+		this.properties = properties;
+		primary = Counter.builder(CONNECTIONS).tag("target", "primary").register(registry);
+		replica = Counter.builder(CONNECTIONS).tag("target", "replica").register(registry);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+					@Override
+					public void afterCommit() {
+						lastWrite = System.nanoTime();
+					}
+				});
+			}
+			primary.increment();
+			return Target.PRIMARY;
+		}
+
+		if (!replicaAllowed(operation(TransactionSynchronizationManager.getCurrentTransactionName()))) {
+			primary.increment();
+			return Target.PRIMARY;
+		}
+		replica.increment();
+		return Target.REPLICA;
+	}
+
+	boolean replicaAllowed(String operation) {
+		Duration lag = properties.getReplicaLag();
+		Duration tolerated = operation == null ? null : properties.getMaxLag().get(operation);
+		if (tolerated == null || tolerated.compareTo(lag) >= 0) {
+			return true;
+		}
+		long since = lastWrite;
+		return since == NEVER || System.nanoTime() - since >= lag.toNanos();
+	}
+
+	/**
+	 * "br.dev...BookServiceImpl.getById" becomes "getById".
+	 */
+	static String operation(String transactionName) {
+		return transactionName == null ? null : transactionName.substring(transactionName.lastIndexOf('.') + 1);
+	}
+
+}
@@ -0,0 +1,70 @@
+package br.dev.jstec.library_api.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import br.dev.jstec.library_api.model.repository.BookShardRepository;
+import br.dev.jstec.library_api.model.repository.BookShards;
+
+/**
+ * Partitioned storage (library.sharding.enabled=true): library.sharding.count
+ * databases, each with its own pool and book table, served by
+ * ShardedBookServiceImpl. The JPA DataSource is left in place but no longer
+ * holds the books.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+	public static final String SEARCH_EXECUTOR = "shardSearchExecutor";
+
+	@Bean
+	public BookShards bookShards(LibraryProperties properties) {
+		LibraryProperties.Sharding sharding = properties.getSharding();
+		List<BookShardRepository> shards = new ArrayList<>(sharding.getCount());
+		for (int shard = 0; shard < sharding.getCount(); shard++) {
+			HikariDataSource pool = new HikariDataSource();
+			pool.setPoolName("shard-" + shard);
+			pool.setJdbcUrl(sharding.getUrl().replace("{shard}", String.valueOf(shard)));
+			pool.setUsername(sharding.getUsername());
+			pool.setPassword(sharding.getPassword());
+			pool.setMaximumPoolSize(sharding.getPoolSize());
+
+			BookShardRepository repository = new BookShardRepository(shard, sharding.getCount(), pool);
+			repository.createSchema();
+			shards.add(repository);
+		}
+		return new BookShards(shards);
+	}
+
+	/**
+	 * Runs the per-shard queries of a fan-out. Bounded in threads and queue; when
+	 * both are full the request thread runs its shard queries itself.
+	 */
+	@Bean(name = SEARCH_EXECUTOR, destroyMethod = "shutdown")
+	public ExecutorService shardSearchExecutor(LibraryProperties properties) {
+		LibraryProperties.Sharding sharding = properties.getSharding();
+		AtomicInteger threads = new AtomicInteger();
+		return new ThreadPoolExecutor(sharding.getSearchThreads(), sharding.getSearchThreads(),
+				0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(sharding.getSearchQueueCapacity()),
+				task -> {
+					Thread thread = new Thread(task, "shard-search-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+}
@@ -0,0 +1,48 @@
+package br.dev.jstec.library_api.config;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Records how many SQL statements each request ran as library.db.statements,
+ * tagged like http.server.requests, so N+1 selects or extra count queries
+ * show up per endpoint. Only statements run on the request thread are
+ * counted, see {@link StatementCounter}.
+ */
+public class StatementCountFilter extends OncePerRequestFilter {
+
+	private MeterRegistry registry;
+
+	public StatementCountFilter(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		StatementCounter.reset();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			DistributionSummary.builder("library.db.statements")
+					.description("SQL statements prepared per request")
+					.tag("method", request.getMethod())
+					.tag("uri", pattern == null ? "UNKNOWN" : pattern.toString())
+					.register(registry)
+					.record(StatementCounter.current());
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package br.dev.jstec.library_api.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread.
+ * 
+ * Registered through hibernate.session_factory.statement_inspector; it only
+ * bumps a thread local counter, which is much cheaper than turning on
+ * hibernate.generate_statistics.
+ * 
+ * Only statements Hibernate prepares on the counting thread itself are seen:
+ * <ul>
+ * <li>a request whose getById or find joins one already running (SingleFlight)
+ * counts none, while the leader's request counts the shared query;</li>
+ * <li>the write-behind inserts of BookAsyncService run on its writer thread
+ * and belong to no request;</li>
+ * <li>the shards of library.sharding.enabled=true are plain JDBC on the shard
+ * search executor, and are not counted at all.</li>
+ * </ul>
+ */
+public class StatementCounter implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+	@Override
+	public String inspect(String sql) {
+		COUNT.get()[0]++;
+		return sql;
+	}
+
+	public static void reset() {
+		COUNT.get()[0] = 0;
+	}
+
+	public static int current() {
+		return COUNT.get()[0];
+	}
+
+}
@@ -0,0 +1,49 @@
+package br.dev.jstec.library_api.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding a single long: the time at which the bucket
+ * would be full again (the "theoretical arrival time" of the generic cell rate
+ * algorithm). Taking a token pushes it one interval forward; the request is
+ * refused when that would put it more than a full burst ahead of now. This is
+ * the same as refilling permitsPerSecond tokens up to burst, without a
+ * separate token count to keep consistent with the refill time.
+ */
+public final class TokenBucket {
+
+	private final long interval;
+	private final long tolerance;
+	private final AtomicLong fullAt;
+
+	public TokenBucket(double permitsPerSecond, int burst, long now) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+		}
+		this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.tolerance = interval * burst;
+		this.fullAt = new AtomicLong(now);
+	}
+
+	/**
+	 * Takes a token.
+	 *
+	 * @param now System.nanoTime()
+	 * @return 0 if the token was taken, otherwise the nanoseconds until one is available
+	 */
+	public long tryAcquire(long now) {
+		while (true) {
+			long current = fullAt.get();
+			long next = Math.max(current, now) + interval;
+			long ahead = next - now;
+			if (ahead > tolerance) {
+				return ahead - tolerance;
+			}
+			if (fullAt.compareAndSet(current, next)) {
+				return 0;
+			}
+		}
+	}
+
+}
@@ -1,11 +1,38 @@
 package br.dev.jstec.library_api.model.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import br.dev.jstec.library_api.api.model.entity.Book;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book , Integer>{
+public interface BookRepository extends JpaRepository<Book , Integer>, BookRepositoryCustom {
+		// query cache: Hibernate drops these results whenever the book table is written through JPA
+		@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
 		boolean existsByIsbn(String isbn);
+
+		@Override
+		@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHEABLE, value = "true"))
+		<S extends Book> Page<S> findAll(Example<S> example, Pageable pageable);
+
+		@Query("select b.isbn from Book b where b.isbn in :isbns")
+		List<String> findExistingIsbns(@Param("isbns") Collection<String> isbns);
+
+		// bulk statements of BookBulkService; they drop the whole second-level cache region
+
+		@Modifying
+		@Query("delete from Book b where b.id in :ids")
+		int removeByIds(@Param("ids") Collection<Integer> ids);
 }
@@ -0,0 +1,81 @@
+package br.dev.jstec.library_api.model.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+public interface BookRepositoryCustom {
+
+	/**
+	 * Forward-only cursor over every book ordered by id, read with the
+	 * configured fetch size. Each book is detached as soon as it is read, so
+	 * the persistence context does not grow with the table. Must be consumed
+	 * inside a transaction and closed afterwards.
+	 */
+	Stream<Book> streamAll();
+
+	/**
+	 * Every isbn of the table, with the same fetch size and consumption rules
+	 * as {@link #streamAll()}.
+	 */
+	Stream<String> streamIsbns();
+
+	/**
+	 * Up to {@code limit} books matching the filter (same rules as the
+	 * Example based find: case insensitive CONTAINING, nulls ignored) that
+	 * come after the cursor. Seeks on (sort key, id) instead of using an
+	 * OFFSET and never runs a count query.
+	 */
+	List<Book> findAfter(Book filter, BookCursor cursor, int limit);
+
+	/**
+	 * Up to {@code limit} ids of books matching the filter, ascending and greater
+	 * than {@code afterId} when it is not null. Drives the chunks of the bulk writes.
+	 */
+	List<Integer> findIds(Book filter, Integer afterId, int limit);
+
+	/**
+	 * Sets title and/or author (nulls are left alone) of the books with the ids and
+	 * bumps their versions, in one statement.
+	 */
+	int updateByIds(Collection<Integer> ids, String title, String author, Instant now);
+
+	/**
+	 * A page of the books matching the filter (same rules as the Example based
+	 * find) built straight into DTOs by a constructor expression: nothing enters
+	 * the persistence context. The count query only runs when the page size does
+	 * not tell the total. Both queries go through the query cache.
+	 */
+	Page<BookDTO> findDTOs(Book filter, Pageable pageable);
+
+	/**
+	 * The books with the ids as DTOs, in no particular order.
+	 */
+	List<BookDTO> findDTOsById(Collection<Integer> ids);
+
+	/**
+	 * count(*) of the books matching the filter.
+	 */
+	long countMatching(Book filter);
+
+	/**
+	 * The {@code limit} most frequent authors among the books matching the filter.
+	 */
+	List<BookFacet> countByAuthor(Book filter, int limit);
+
+	/**
+	 * The {@code limit} most frequent first {@code length} characters of the isbn
+	 * (registration group and publisher for a fixed prefix length).
+	 */
+	List<BookFacet> countByIsbnPrefix(Book filter, int length, int limit);
+
+}
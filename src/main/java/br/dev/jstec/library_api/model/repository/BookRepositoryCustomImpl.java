@@ -0,0 +1,239 @@
+package br.dev.jstec.library_api.model.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CompoundSelection;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.CacheMode;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private LibraryProperties properties;
+
+	public BookRepositoryCustomImpl(LibraryProperties properties) {
+		this.properties = properties;
+	}
+
+	@Override
+	public Stream<Book> streamAll() {
+		return entityManager.createQuery("select b from Book b order by b.id", Book.class)
+				.setHint(QueryHints.HINT_FETCH_SIZE, properties.getExport().getFetchSize())
+				.setHint(QueryHints.HINT_READONLY, true)
+				// the whole catalog would evict every hot book from the second-level cache
+				.setHint(QueryHints.HINT_CACHE_MODE, CacheMode.IGNORE)
+				.getResultStream()
+				.peek(entityManager::detach);
+	}
+
+	@Override
+	public Stream<String> streamIsbns() {
+		return entityManager.createQuery("select b.isbn from Book b", String.class)
+				.setHint(QueryHints.HINT_FETCH_SIZE, properties.getExport().getFetchSize())
+				.getResultStream();
+	}
+
+	@Override
+	public List<Book> findAfter(Book filter, BookCursor cursor, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Book> query = cb.createQuery(Book.class);
+		Root<Book> root = query.from(Book.class);
+
+		List<Predicate> predicates = filterPredicates(cb, root, filter);
+		Path<Integer> id = root.get("id");
+		Path<String> key = cursor.isById() ? null : root.get(cursor.getProperty());
+		boolean ascending = cursor.getDirection().isAscending();
+
+		if (!cursor.isFirst()) {
+			Predicate afterId = ascending
+					? cb.greaterThan(id, cursor.getLastId())
+					: cb.lessThan(id, cursor.getLastId());
+			if (key == null) {
+				predicates.add(afterId);
+			} else {
+				Predicate afterKey = ascending
+						? cb.greaterThan(key, cursor.getLastValue())
+						: cb.lessThan(key, cursor.getLastValue());
+				predicates.add(cb.or(afterKey, cb.and(cb.equal(key, cursor.getLastValue()), afterId)));
+			}
+		}
+
+		query.where(predicates.toArray(new Predicate[0]));
+		if (key == null) {
+			query.orderBy(ascending ? cb.asc(id) : cb.desc(id));
+		} else {
+			query.orderBy(ascending ? cb.asc(key) : cb.desc(key), ascending ? cb.asc(id) : cb.desc(id));
+		}
+
+		return entityManager.createQuery(query)
+				.setHint(QueryHints.HINT_READONLY, true)
+				.setMaxResults(limit)
+				.getResultList();
+	}
+
+	@Override
+	public List<Integer> findIds(Book filter, Integer afterId, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
+		Root<Book> root = query.from(Book.class);
+		Path<Integer> id = root.get("id");
+
+		List<Predicate> predicates = filterPredicates(cb, root, filter);
+		if (afterId != null) {
+			predicates.add(cb.greaterThan(id, afterId));
+		}
+		query.select(id).where(predicates.toArray(new Predicate[0])).orderBy(cb.asc(id));
+
+		return entityManager.createQuery(query)
+				.setMaxResults(limit)
+				.getResultList();
+	}
+
+	@Override
+	public int updateByIds(Collection<Integer> ids, String title, String author, Instant now) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaUpdate<Book> update = cb.createCriteriaUpdate(Book.class);
+		Root<Book> root = update.from(Book.class);
+
+		if (title != null) {
+			update.set(root.<String>get("title"), title);
+		}
+		if (author != null) {
+			update.set(root.<String>get("author"), author);
+		}
+		Path<Long> version = root.get("version");
+		update.set(version, cb.sum(version, 1L));
+		update.set(root.<Instant>get("lastModified"), now);
+		update.where(root.get("id").in(ids));
+
+		return entityManager.createQuery(update).executeUpdate();
+	}
+
+	@Override
+	public Page<BookDTO> findDTOs(Book filter, Pageable pageable) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<BookDTO> query = cb.createQuery(BookDTO.class);
+		Root<Book> root = query.from(Book.class);
+		query.select(dtoOf(cb, root)).where(filterPredicates(cb, root, filter).toArray(new Predicate[0]));
+		if (pageable.getSort().isSorted()) {
+			query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+		}
+
+		TypedQuery<BookDTO> typedQuery = entityManager.createQuery(query)
+				.setHint(QueryHints.HINT_CACHEABLE, true);
+		if (pageable.isPaged()) {
+			typedQuery.setFirstResult((int) pageable.getOffset()).setMaxResults(pageable.getPageSize());
+		}
+		return PageableExecutionUtils.getPage(typedQuery.getResultList(), pageable, () -> countMatching(filter));
+	}
+
+	@Override
+	public List<BookDTO> findDTOsById(Collection<Integer> ids) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<BookDTO> query = cb.createQuery(BookDTO.class);
+		Root<Book> root = query.from(Book.class);
+		query.select(dtoOf(cb, root)).where(root.get("id").in(ids));
+		return entityManager.createQuery(query).getResultList();
+	}
+
+	private CompoundSelection<BookDTO> dtoOf(CriteriaBuilder cb, Root<Book> root) {
+		return cb.construct(BookDTO.class,
+				root.get("id"), root.get("title"), root.get("author"), root.get("isbn"), root.get("version"));
+	}
+
+	@Override
+	public long countMatching(Book filter) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<Long> query = cb.createQuery(Long.class);
+		Root<Book> root = query.from(Book.class);
+		query.select(cb.count(root)).where(filterPredicates(cb, root, filter).toArray(new Predicate[0]));
+		return entityManager.createQuery(query)
+				.setHint(QueryHints.HINT_CACHEABLE, true)
+				.getSingleResult();
+	}
+
+	@Override
+	public List<BookFacet> countByAuthor(Book filter, int limit) {
+		return countBy(filter, root -> root.get("author"), limit);
+	}
+
+	@Override
+	public List<BookFacet> countByIsbnPrefix(Book filter, int length, int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		return countBy(filter, root -> cb.substring(root.get("isbn"), 1, length), limit);
+	}
+
+	private List<BookFacet> countBy(Book filter, Function<Root<Book>, Expression<String>> key,
+			int limit) {
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaQuery<BookFacet> query = cb.createQuery(BookFacet.class);
+		Root<Book> root = query.from(Book.class);
+		Expression<String> value = key.apply(root);
+		Expression<Long> count = cb.count(root);
+
+		// only (value, count) pairs leave the database, no book is loaded
+		query.select(cb.construct(BookFacet.class, value, count))
+				.where(filterPredicates(cb, root, filter).toArray(new Predicate[0]))
+				.groupBy(value)
+				.orderBy(cb.desc(count), cb.asc(value));
+
+		return entityManager.createQuery(query)
+				.setMaxResults(limit)
+				.getResultList();
+	}
+
+	private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Book> root, Book filter) {
+		List<Predicate> predicates = new ArrayList<>();
+		if (filter == null) {
+			return predicates;
+		}
+		if (filter.getId() != null) {
+			predicates.add(cb.equal(root.get("id"), filter.getId()));
+		}
+		addContaining(cb, root.get("title"), filter.getTitle(), predicates);
+		addContaining(cb, root.get("author"), filter.getAuthor(), predicates);
+		addContaining(cb, root.get("isbn"), filter.getIsbn(), predicates);
+		return predicates;
+	}
+
+	private void addContaining(CriteriaBuilder cb, Path<String> path, String value, List<Predicate> predicates) {
+		if (value == null) {
+			return;
+		}
+		String escaped = value.toLowerCase(Locale.ROOT)
+				.replace("\\", "\\\\")
+				.replace("%", "\\%")
+				.replace("_", "\\_");
+		predicates.add(cb.like(cb.lower(path), "%" + escaped + "%", '\\'));
+	}
+
+}
@@ -0,0 +1,261 @@
+package br.dev.jstec.library_api.model.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * The book table of one shard, over plain JDBC. Ids are global: the local
+ * sequence value times the number of shards plus the shard number, so the
+ * shard of a book is its id modulo the number of shards.
+ * 
+ * Filters match like the JPA repository: case insensitive CONTAINING on title,
+ * author and isbn, equality on id.
+ */
+public class BookShardRepository {
+
+	private static final List<String> SORTABLE = BookCursor.SORTABLE;
+
+	private static final String COLUMNS = "id, title, author, isbn, version, last_modified";
+
+	private static final RowMapper<Book> BOOK = BookShardRepository::book;
+
+	private final int shard;
+	private final int shardCount;
+	private final DataSource dataSource;
+	private final JdbcTemplate jdbc;
+	private final TransactionTemplate transactionTemplate;
+
+	public BookShardRepository(int shard, int shardCount, DataSource dataSource) {
+		this.shard = shard;
+		this.shardCount = shardCount;
+		this.dataSource = dataSource;
+		this.jdbc = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	public int getShard() {
+		return shard;
+	}
+
+	public TransactionTemplate getTransactionTemplate() {
+		return transactionTemplate;
+	}
+
+	public DataSource getDataSource() {
+		return dataSource;
+	}
+
+	public void createSchema() {
+		jdbc.execute("create table if not exists book (id integer primary key, title varchar(255), "
+				+ "author varchar(255), isbn varchar(255), version bigint not null, last_modified timestamp, "
+				+ "constraint " + Book.ISBN_CONSTRAINT + " unique (isbn))");
+		jdbc.execute("create sequence if not exists book_seq");
+	}
+
+	public int nextId() {
+		Long local = jdbc.queryForObject("select next value for book_seq", Long.class);
+		return Math.toIntExact(local * shardCount + shard);
+	}
+
+	public void insert(List<Book> books) {
+		jdbc.batchUpdate("insert into book (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?)", books, books.size(),
+				(statement, book) -> {
+					statement.setInt(1, book.getId());
+					statement.setString(2, book.getTitle());
+					statement.setString(3, book.getAuthor());
+					statement.setString(4, book.getIsbn());
+					statement.setLong(5, book.getVersion());
+					statement.setTimestamp(6, Timestamp.from(book.getLastModified()));
+				});
+	}
+
+	public Book findById(Integer id) {
+		List<Book> books = jdbc.query("select " + COLUMNS + " from book where id = ?", BOOK, id);
+		return books.isEmpty() ? null : books.get(0);
+	}
+
+	public List<Book> findAllById(Collection<Integer> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return jdbc.query("select " + COLUMNS + " from book where id in (" + placeholders(ids.size()) + ")",
+				BOOK, ids.toArray());
+	}
+
+	public boolean existsById(Integer id) {
+		return !jdbc.queryForList("select 1 from book where id = ?", Integer.class, id).isEmpty();
+	}
+
+	public List<String> findExistingIsbns(Collection<String> isbns) {
+		if (isbns.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return jdbc.queryForList("select isbn from book where isbn in (" + placeholders(isbns.size()) + ")",
+				String.class, isbns.toArray());
+	}
+
+	/**
+	 * Sets title, author and isbn and bumps the version, checking it when given.
+	 */
+	public int update(Book book, Instant now) {
+		if (book.getVersion() == null) {
+			return jdbc.update("update book set title = ?, author = ?, isbn = ?, version = version + 1, "
+					+ "last_modified = ? where id = ?", book.getTitle(), book.getAuthor(), book.getIsbn(),
+					Timestamp.from(now), book.getId());
+		}
+		return jdbc.update("update book set title = ?, author = ?, isbn = ?, version = version + 1, "
+				+ "last_modified = ? where id = ? and version = ?", book.getTitle(), book.getAuthor(),
+				book.getIsbn(), Timestamp.from(now), book.getId(), book.getVersion());
+	}
+
+	public int deleteById(Integer id) {
+		return jdbc.update("delete from book where id = ?", id);
+	}
+
+	public int deleteById(Integer id, long version) {
+		return jdbc.update("delete from book where id = ? and version = ?", id, version);
+	}
+
+	/**
+	 * The first limit matches in the order of the sort, id last to break ties.
+	 */
+	public List<Book> find(Book filter, Sort sort, int limit) {
+		List<Object> args = new ArrayList<>();
+		String where = where(filter, args);
+		args.add(limit);
+		return jdbc.query("select " + COLUMNS + " from book" + where + orderBy(sort) + " limit ?", BOOK,
+				args.toArray());
+	}
+
+	public long count(Book filter) {
+		List<Object> args = new ArrayList<>();
+		return jdbc.queryForObject("select count(*) from book" + where(filter, args), Long.class, args.toArray());
+	}
+
+	/**
+	 * Same keyset as BookRepositoryCustom.findAfter.
+	 */
+	public List<Book> findAfter(Book filter, BookCursor cursor, int limit) {
+		List<Object> args = new ArrayList<>();
+		StringBuilder where = new StringBuilder(where(filter, args));
+		boolean ascending = cursor.getDirection().isAscending();
+		String comparison = ascending ? " > ?" : " < ?";
+		if (!cursor.isFirst()) {
+			where.append(where.length() == 0 ? " where " : " and ");
+			if (cursor.isById()) {
+				where.append("id").append(comparison);
+				args.add(cursor.getLastId());
+			} else {
+				String key = cursor.getProperty();
+				where.append("(").append(key).append(comparison)
+						.append(" or (").append(key).append(" = ? and id").append(comparison).append("))");
+				args.add(cursor.getLastValue());
+				args.add(cursor.getLastValue());
+				args.add(cursor.getLastId());
+			}
+		}
+		Sort sort = Sort.by(cursor.getDirection(), cursor.getProperty());
+		args.add(limit);
+		return jdbc.query("select " + COLUMNS + " from book" + where + orderBy(sort) + " limit ?", BOOK,
+				args.toArray());
+	}
+
+	/**
+	 * Every value of the column (or its first prefixLength characters) with its
+	 * count; merging shards needs all of them to get the global top right.
+	 */
+	public List<BookFacet> countBy(Book filter, String column, int prefixLength) {
+		List<Object> args = new ArrayList<>();
+		String key = prefixLength > 0 ? "left(" + column + ", " + prefixLength + ")" : column;
+		return jdbc.query("select " + key + ", count(*) from book" + where(filter, args) + " group by " + key,
+				(rs, row) -> new BookFacet(rs.getString(1), rs.getLong(2)), args.toArray());
+	}
+
+	public void forEach(int fetchSize, Consumer<Book> consumer) {
+		JdbcTemplate streaming = new JdbcTemplate(dataSource);
+		streaming.setFetchSize(fetchSize);
+		streaming.query("select " + COLUMNS + " from book order by id", rs -> {
+			consumer.accept(book(rs, 0));
+		});
+	}
+
+	private String where(Book filter, List<Object> args) {
+		List<String> conditions = new ArrayList<>();
+		if (filter != null) {
+			if (filter.getId() != null) {
+				conditions.add("id = ?");
+				args.add(filter.getId());
+			}
+			containing(conditions, args, "title", filter.getTitle());
+			containing(conditions, args, "author", filter.getAuthor());
+			containing(conditions, args, "isbn", filter.getIsbn());
+		}
+		return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+	}
+
+	private void containing(List<String> conditions, List<Object> args, String column, String value) {
+		if (value == null) {
+			return;
+		}
+		conditions.add("lower(" + column + ") like ? escape '\\'");
+		args.add("%" + value.toLowerCase(Locale.ROOT)
+				.replace("\\", "\\\\")
+				.replace("%", "\\%")
+				.replace("_", "\\_") + "%");
+	}
+
+	private String orderBy(Sort sort) {
+		List<String> orders = new ArrayList<>();
+		boolean byId = false;
+		for (Sort.Order order : sort) {
+			if (!SORTABLE.contains(order.getProperty())) {
+				throw new BusinessException("Ordenação não suportada: " + order.getProperty());
+			}
+			orders.add(order.getProperty() + (order.isAscending() ? " asc" : " desc"));
+			byId |= "id".equals(order.getProperty());
+		}
+		if (!byId) {
+			Sort.Order last = sort.isSorted() ? sort.toList().get(sort.toList().size() - 1) : null;
+			orders.add(last == null || last.isAscending() ? "id asc" : "id desc");
+		}
+		return " order by " + String.join(", ", orders);
+	}
+
+	private static String placeholders(int count) {
+		return String.join(", ", Collections.nCopies(count, "?"));
+	}
+
+	private static Book book(ResultSet rs, int row) throws SQLException {
+		Timestamp lastModified = rs.getTimestamp(6);
+		return Book.builder()
+				.id(rs.getInt(1))
+				.title(rs.getString(2))
+				.author(rs.getString(3))
+				.isbn(rs.getString(4))
+				.version(rs.getLong(5))
+				.lastModified(lastModified == null ? null : lastModified.toInstant())
+				.build();
+	}
+
+}
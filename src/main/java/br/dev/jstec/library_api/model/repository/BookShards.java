@@ -0,0 +1,51 @@
+package br.dev.jstec.library_api.model.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The shards of the partitioned storage (library.sharding.enabled=true).
+ * 
+ * A new book goes to the shard of its isbn hash, so the unique index of that
+ * shard alone decides on duplicated isbns. Its id then carries the shard (see
+ * {@link BookShardRepository}), so point operations by id go straight to it.
+ */
+public class BookShards implements Closeable {
+
+	private final List<BookShardRepository> shards;
+
+	public BookShards(List<BookShardRepository> shards) {
+		this.shards = Collections.unmodifiableList(shards);
+	}
+
+	public List<BookShardRepository> all() {
+		return shards;
+	}
+
+	public int size() {
+		return shards.size();
+	}
+
+	public BookShardRepository byId(Integer id) {
+		return shards.get(Math.floorMod(id, shards.size()));
+	}
+
+	public BookShardRepository byIsbn(String isbn) {
+		return shards.get(Math.floorMod(isbn.hashCode(), shards.size()));
+	}
+
+	/**
+	 * Closes the pools of the shards.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (BookShardRepository shard : shards) {
+			if (shard.getDataSource() instanceof Closeable) {
+				((Closeable) shard.getDataSource()).close();
+			}
+		}
+	}
+
+}
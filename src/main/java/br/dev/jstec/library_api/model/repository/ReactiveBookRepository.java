@@ -0,0 +1,19 @@
+package br.dev.jstec.library_api.model.repository;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import reactor.core.publisher.Mono;
+
+/**
+ * R2DBC access to the table mapped by {@link BookRepository}; only created with the "reactive" profile.
+ */
+@Repository
+public interface ReactiveBookRepository extends R2dbcRepository<Book, Integer> {
+
+		// ids come from the same sequence Hibernate uses, so both stacks can write to one table
+		@Query("select next value for book_seq")
+		Mono<Long> nextId();
+}
@@ -0,0 +1,230 @@
+package br.dev.jstec.library_api.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCreateStatus;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookAsyncService;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+
+@Service
+public class BookAsyncServiceImpl implements BookAsyncService {
+
+	private static final Logger log = LoggerFactory.getLogger(BookAsyncServiceImpl.class);
+
+	public static final String SUBMITTED = "library.books.async.submitted";
+
+	public static final String QUEUE_DEPTH = "library.books.async.queue.depth";
+
+	public static final String FLUSH = "library.books.async.flush";
+
+	public static final String FLUSH_ERROR = "Não foi possível salvar o livro, tente novamente";
+
+	private BookService service;
+	private LibraryProperties.AsyncCreate properties;
+
+	private final BlockingQueue<BookCreateStatus> queue;
+	// queued or being written: never dropped, and as bounded as the queue itself
+	private final Map<String, BookCreateStatus> pending = new ConcurrentHashMap<>();
+	// finished outcomes, kept for a while for the client to read
+	private final Cache<String, BookCreateStatus> statuses;
+
+	private final Counter accepted;
+	private final Counter queueFull;
+	private final Timer flushTimer;
+
+	private volatile boolean running;
+	private Thread writer;
+
+	public BookAsyncServiceImpl(BookService service, LibraryProperties properties, MeterRegistry registry) {
+		this.service = service;
+		this.properties = properties.getAsyncCreate();
+		this.queue = new ArrayBlockingQueue<>(this.properties.getQueueCapacity());
+		this.statuses = Caffeine.newBuilder()
+				.maximumSize(this.properties.getMaxStatuses())
+				.expireAfterWrite(this.properties.getStatusTtl())
+				.build();
+
+		accepted = Counter.builder(SUBMITTED).tag("result", "accepted").register(registry);
+		queueFull = Counter.builder(SUBMITTED).tag("result", "queue_full").register(registry);
+		flushTimer = Timer.builder(FLUSH)
+				.description("time to save one batch of queued books")
+				.publishPercentileHistogram()
+				.register(registry);
+		Gauge.builder(QUEUE_DEPTH, queue, BlockingQueue::size)
+				.description("books waiting for the writer")
+				.register(registry);
+	}
+
+	@Override
+	public Optional<BookCreateStatus> submit(Book book) {
+		String id = UUID.randomUUID().toString();
+		BookCreateStatus status = BookCreateStatus.pending(id, book);
+		// known before it is queued, so the writer always finds it to finish
+		pending.put(id, status);
+		if (!queue.offer(status)) {
+			pending.remove(id);
+			queueFull.increment();
+			return Optional.empty();
+		}
+		accepted.increment();
+		return Optional.of(status);
+	}
+
+	@Override
+	public Optional<BookCreateStatus> status(String id) {
+		BookCreateStatus status = pending.get(id);
+		return Optional.ofNullable(status != null ? status : statuses.getIfPresent(id));
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public synchronized void start() {
+		if (writer != null) {
+			return;
+		}
+		running = true;
+		writer = new Thread(this::drain, "book-async-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Stops taking new batches once the queue is empty, so what was accepted is
+	 * still written.
+	 */
+	@PreDestroy
+	public synchronized void stop() throws InterruptedException {
+		running = false;
+		if (writer != null) {
+			writer.join(TimeUnit.SECONDS.toMillis(30));
+			writer = null;
+		}
+	}
+
+	private void drain() {
+		while (running || !queue.isEmpty()) {
+			try {
+				BookCreateStatus first = queue.poll(properties.getPollTimeout().toMillis(), TimeUnit.MILLISECONDS);
+				if (first != null) {
+					List<BookCreateStatus> batch = new ArrayList<>(properties.getBatchSize());
+					batch.add(first);
+					queue.drainTo(batch, properties.getBatchSize() - 1);
+					flushTimer.record(() -> write(batch));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (RuntimeException e) {
+				log.error("Async book writer failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes what is queued right now, up to one batch, in the caller's thread.
+	 * Returns the number of books written.
+	 */
+	public int flush() {
+		List<BookCreateStatus> batch = new ArrayList<>(properties.getBatchSize());
+		queue.drainTo(batch, properties.getBatchSize());
+		if (!batch.isEmpty()) {
+			flushTimer.record(() -> write(batch));
+		}
+		return batch.size();
+	}
+
+	private void write(List<BookCreateStatus> batch) {
+		try {
+			saveAll(batch);
+		} finally {
+			// whatever an unexpected error left unfinished must not stay pending forever
+			batch.stream()
+					.filter(status -> pending.containsKey(status.getId()))
+					.forEach(status -> finish(BookCreateStatus.failed(status.getId(), status.getBook(), FLUSH_ERROR)));
+		}
+	}
+
+	private void saveAll(List<BookCreateStatus> batch) {
+		List<Book> books = new ArrayList<>(batch.size());
+		batch.forEach(queued -> books.add(queued.getBook()));
+
+		List<BookBatchResult> results;
+		try {
+			// one transaction and one isbn lookup for the whole batch
+			results = service.saveAll(books);
+		} catch (BusinessException e) {
+			// an isbn saved by someone else after the lookup rolled the batch back
+			writeOneByOne(batch);
+			return;
+		} catch (RuntimeException e) {
+			log.error("Async create of {} books failed", batch.size(), e);
+			batch.forEach(status -> finish(BookCreateStatus.failed(status.getId(), status.getBook(), FLUSH_ERROR)));
+			return;
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			String id = batch.get(i).getId();
+			BookBatchResult result = results.get(i);
+			finish(result.isCreated()
+					? BookCreateStatus.created(id, result.getBook())
+					: BookCreateStatus.rejected(id, result.getBook(), result.getError()));
+		}
+	}
+
+	private void writeOneByOne(List<BookCreateStatus> batch) {
+		for (BookCreateStatus queued : batch) {
+			// the rolled back persist left an id and version on the entity
+			Book book = Book.builder()
+					.title(queued.getBook().getTitle())
+					.author(queued.getBook().getAuthor())
+					.isbn(queued.getBook().getIsbn())
+					.build();
+			BookCreateStatus status;
+			try {
+				status = BookCreateStatus.created(queued.getId(), service.save(book));
+			} catch (BusinessException e) {
+				status = BookCreateStatus.rejected(queued.getId(), book, e.getMessage());
+			} catch (RuntimeException e) {
+				log.error("Async create of book {} failed", queued.getId(), e);
+				status = BookCreateStatus.failed(queued.getId(), book, FLUSH_ERROR);
+			}
+			finish(status);
+		}
+	}
+
+	/**
+	 * Into the bounded cache first, then out of pending: a reader finds it in one of them.
+	 */
+	private void finish(BookCreateStatus status) {
+		statuses.put(status.getId(), status);
+		pending.remove(status.getId());
+	}
+
+}
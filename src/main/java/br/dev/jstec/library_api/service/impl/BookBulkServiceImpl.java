@@ -0,0 +1,141 @@
+package br.dev.jstec.library_api.service.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import io.micrometer.core.annotation.Timed;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookBulkService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+@Service
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class BookBulkServiceImpl implements BookBulkService {
+
+	private BookRepository repository;
+	private TransactionTemplate transactionTemplate;
+	private CacheManager cacheManager;
+	private ApplicationEventPublisher eventPublisher;
+	private LibraryProperties properties;
+
+	public BookBulkServiceImpl(BookRepository repository, PlatformTransactionManager transactionManager,
+			CacheManager cacheManager, ApplicationEventPublisher eventPublisher, LibraryProperties properties) {
+
+		this.repository = repository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.cacheManager = cacheManager;
+		this.eventPublisher = eventPublisher;
+		this.properties = properties;
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public long delete(List<Integer> ids, Book filter) {
+		return inChunks(ids, filter, chunk -> {
+			int rows = repository.removeByIds(chunk);
+			List<Book> deleted = new ArrayList<>(chunk.size());
+			chunk.forEach(id -> deleted.add(Book.builder().id(id).build()));
+			eventPublisher.publishEvent(BookChangedEvent.deleted(deleted));
+			return rows;
+		});
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public long update(List<Integer> ids, Book filter, Book changes) {
+		if (changes == null || (changes.getTitle() == null && changes.getAuthor() == null)) {
+			throw new BusinessException("Informe o título ou o autor");
+		}
+		if (changes.getIsbn() != null) {
+			throw new BusinessException("O isbn não pode ser alterado em lote");
+		}
+
+		Instant now = Instant.now();
+		return inChunks(ids, filter, chunk -> {
+			int rows = repository.updateByIds(chunk, changes.getTitle(), changes.getAuthor(), now);
+			// the search index needs the full books: one read per chunk, as a projection so that
+			// no entity stays in the request's persistence context until the whole bulk is done
+			List<Book> updated = new ArrayList<>(chunk.size());
+			repository.findDTOsById(chunk).forEach(dto -> updated.add(Book.builder()
+					.id(dto.getId())
+					.title(dto.getTitle())
+					.author(dto.getAuthor())
+					.isbn(dto.getIsbn())
+					.version(dto.getVersion())
+					.build()));
+			eventPublisher.publishEvent(BookChangedEvent.updated(updated));
+			return rows;
+		});
+	}
+
+	private long inChunks(List<Integer> ids, Book filter, ToIntFunction<List<Integer>> statement) {
+		if (ids == null && isEmpty(filter)) {
+			throw new BusinessException("Informe os ids ou um filtro");
+		}
+		int chunkSize = properties.getBulk().getChunkSize();
+		long affected = 0;
+
+		if (ids != null) {
+			for (int from = 0; from < ids.size(); from += chunkSize) {
+				List<Integer> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+				affected += transactionTemplate.execute(status -> statement.applyAsInt(chunk));
+				evict(chunk);
+			}
+			return affected;
+		}
+
+		// keyset over the ids: books an update moves out of (or into) the filter are not visited twice
+		Integer afterId = null;
+		List<Integer> chunk;
+		do {
+			Integer after = afterId;
+			int[] rows = new int[1];
+			chunk = transactionTemplate.execute(status -> {
+				List<Integer> found = repository.findIds(filter, after, chunkSize);
+				if (!found.isEmpty()) {
+					rows[0] = statement.applyAsInt(found);
+				}
+				return found;
+			});
+			affected += rows[0];
+			evict(chunk);
+			if (!chunk.isEmpty()) {
+				afterId = chunk.get(chunk.size() - 1);
+			}
+		} while (chunk.size() == chunkSize);
+
+		return affected;
+	}
+
+	// a blank field would match as CONTAINING '', i.e. every book
+	private boolean isEmpty(Book filter) {
+		return filter == null || (filter.getId() == null && !StringUtils.hasText(filter.getTitle())
+				&& !StringUtils.hasText(filter.getAuthor()) && !StringUtils.hasText(filter.getIsbn()));
+	}
+
+	/**
+	 * After the commit of the chunk, so a concurrent getById cannot cache the old row again.
+	 */
+	private void evict(List<Integer> chunk) {
+		Cache cache = cacheManager.getCache(BookServiceImpl.BOOKS_CACHE);
+		if (cache != null) {
+			chunk.forEach(cache::evict);
+		}
+	}
+
+}
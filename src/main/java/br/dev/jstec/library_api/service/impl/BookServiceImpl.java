@@ -1,70 +1,300 @@
 package br.dev.jstec.library_api.service.impl;
 
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.Pageable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
 import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookStats;
 import br.dev.jstec.library_api.api.model.entity.Book;
 import br.dev.jstec.library_api.api.service.BookService;
 import br.dev.jstec.library_api.model.repository.BookRepository;
+import br.dev.jstec.library_api.service.search.BookSearchIndex;
+import br.dev.jstec.library_api.service.search.IsbnBloomFilter;
 
 @Service
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class BookServiceImpl implements BookService {
 
+	public static final String BOOKS_CACHE = "books";
+
+	public static final String STATS_CACHE = "bookStats";
+
+	public static final String DUPLICATED_ISBN = "Isbn Já cadastrado";
+
+	public static final String TIMER = "library.books.service";
+
+	/** ids per IN list of getByIds, well below the limits of the databases on bind parameters */
+	static final int IN_CHUNK_SIZE = 500;
+
+	/** saveAll tries again when another request inserts one of its isbns in between */
+	static final int SAVE_ALL_ATTEMPTS = 3;
+
 	private BookRepository repository;
+	private BookSearchIndex searchIndex;
+	private IsbnBloomFilter isbnFilter;
+	private ApplicationEventPublisher eventPublisher;
+	private PlatformTransactionManager transactionManager;
+	private CacheManager cacheManager;
+
+	// concurrent identical reads share one query
+	private SingleFlight<Integer, Optional<Book>> byId;
+	private SingleFlight<List<Object>, Page<Book>> pages;
+	private SingleFlight<List<Object>, Page<BookDTO>> dtoPages;
 	
 	
-	public BookServiceImpl(BookRepository repository) {
+	public BookServiceImpl(BookRepository repository, BookSearchIndex searchIndex, IsbnBloomFilter isbnFilter,
+			ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+			CacheManager cacheManager, MeterRegistry registry) {
 
 		this.repository = repository;
+		this.searchIndex = searchIndex;
+		this.isbnFilter = isbnFilter;
+		this.eventPublisher = eventPublisher;
+		this.transactionManager = transactionManager;
+		this.cacheManager = cacheManager;
+		this.byId = new SingleFlight<>("getById", found -> found.map(book -> book.toBuilder().build()), registry);
+		this.pages = new SingleFlight<>("find", page -> page.map(book -> book.toBuilder().build()), registry);
+		this.dtoPages = new SingleFlight<>("findDTOs", page -> page.map(dto -> dto.toBuilder().build()), registry);
 	}
 
 
 	@Override
+	@Timed(value = TIMER, histogram = true)
 	public Book save(Book book) {
-		if (repository.existsByIsbn(book.getIsbn())) {
-			throw new BusinessException("Isbn Já cadastrado");
+		// no existsByIsbn round-trip: the unique index on isbn decides, also between concurrent creates
+		Book savedBook;
+		try {
+			savedBook = repository.save(book);
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
 		}
-		return repository.save(book);
+		eventPublisher.publishEvent(BookChangedEvent.saved(savedBook));
+		return savedBook;
 	}
 
 
 	@Override
+	@Cacheable(cacheNames = BOOKS_CACHE, key = "#id", unless = "#result == null")
+	@Timed(value = TIMER, histogram = true)
 	public Optional<Book> getById(Integer id) {
-		// TODO Auto-generated method stub
-		return this.repository.findById(id);
+		// runs on a cache miss only; the misses of a hot id arriving together wait for one query
+		return byId.execute(id, () -> readOnly("getById", () -> this.repository.findById(id)));
+	}
+
+	@Override
+	@Timed(value = TIMER, histogram = true)
+	public List<Optional<Book>> getByIds(List<Integer> ids) {
+		// same entries getById reads and writes
+		Cache cache = cacheManager.getCache(BOOKS_CACHE);
+		Map<Integer, Book> found = new HashMap<>();
+		Set<Integer> missing = new LinkedHashSet<>();
+		for (Integer id : ids) {
+			if (id == null || found.containsKey(id)) {
+				continue;
+			}
+			Book cached = cache == null ? null : cache.get(id, Book.class);
+			if (cached != null) {
+				found.put(id, cached);
+			} else {
+				missing.add(id);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			readOnly("getByIds", () -> {
+				List<Integer> toRead = new ArrayList<>(missing);
+				for (int from = 0; from < toRead.size(); from += IN_CHUNK_SIZE) {
+					List<Integer> chunk = toRead.subList(from, Math.min(from + IN_CHUNK_SIZE, toRead.size()));
+					for (Book book : repository.findAllById(chunk)) {
+						found.put(book.getId(), book);
+						if (cache != null) {
+							cache.put(book.getId(), book);
+						}
+					}
+				}
+				return null;
+			});
+		}
+
+		List<Optional<Book>> result = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			result.add(Optional.ofNullable(id == null ? null : found.get(id)));
+		}
+		return result;
 	}
 
 
 	@Override
+	@Caching(evict = {
+			@CacheEvict(cacheNames = BOOKS_CACHE, key = "#book.id", beforeInvocation = true,
+					condition = "#book != null && #book.id != null"),
+			@CacheEvict(cacheNames = BOOKS_CACHE, key = "#book.id") })
+	@Timed(value = TIMER, histogram = true)
 	public void delete(Book book) {
 		if(book == null || book.getId() == null ) {
 			throw new IllegalArgumentException("Book can't be null");
 		}
 		
 		this.repository.delete(book);
+		eventPublisher.publishEvent(BookChangedEvent.deleted(book));
 		
 	}
 
 
 	@Override
+	@Caching(
+			evict = @CacheEvict(cacheNames = BOOKS_CACHE, key = "#book.id", beforeInvocation = true,
+					condition = "#book != null && #book.id != null"),
+			put = @CachePut(cacheNames = BOOKS_CACHE, key = "#result.id"))
+	@Timed(value = TIMER, histogram = true)
 	public Book update(Book book) {
 		if(book == null || book.getId() == null ) {
 			throw new IllegalArgumentException("Book can't be null");
 		}
 		
-		return this.repository.save(book);
+		Book updatedBook;
+		try {
+			updatedBook = this.repository.save(book);
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
+		}
+		eventPublisher.publishEvent(BookChangedEvent.updated(updatedBook));
+		return updatedBook;
 		
 	}
 
 	@Override
+	@Transactional
+	@Timed(value = TIMER, histogram = true)
+	public boolean deleteById(Integer id) {
+		if (id == null) {
+			throw new IllegalArgumentException("Book can't be null");
+		}
+
+		// through the entity, not a JPQL delete: a bulk statement would drop the whole
+		// second-level cache region, while this only evicts the book; the load is a cache
+		// hit for books read recently
+		Optional<Book> book = repository.findById(id);
+		if (!book.isPresent()) {
+			return false;
+		}
+		repository.delete(book.get());
+		evictAfterCommit(id);
+		eventPublisher.publishEvent(BookChangedEvent.deleted(Book.builder().id(id).build()));
+		return true;
+	}
+
+	@Override
+	@Transactional
+	@Timed(value = TIMER, histogram = true)
+	public Optional<Book> updateById(Book book) {
+		if(book == null || book.getId() == null ) {
+			throw new IllegalArgumentException("Book can't be null");
+		}
+
+		// same as deleteById: the entity update evicts only this book from the second-level
+		// cache, and on a cache hit the UPDATE is the only statement
+		Optional<Book> current = repository.findById(book.getId());
+		if (!current.isPresent()) {
+			return Optional.empty();
+		}
+		Book updatedBook = current.get();
+		if (book.getVersion() != null && !book.getVersion().equals(updatedBook.getVersion())) {
+			throw new ObjectOptimisticLockingFailureException(Book.class, book.getId());
+		}
+		updatedBook.setTitle(book.getTitle());
+		updatedBook.setAuthor(book.getAuthor());
+		updatedBook.setIsbn(book.getIsbn());
+		try {
+			// the version column still guards against a write between the load and the flush
+			updatedBook = repository.saveAndFlush(updatedBook);
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
+		}
+		evictAfterCommit(book.getId());
+		eventPublisher.publishEvent(BookChangedEvent.updated(updatedBook));
+		return Optional.of(updatedBook);
+	}
+
+	/**
+	 * After the commit of the surrounding transaction, so a concurrent getById cannot
+	 * put the old row back into the cache between the eviction and the commit.
+	 */
+	private void evictAfterCommit(Integer id) {
+		Cache cache = cacheManager.getCache(BOOKS_CACHE);
+		if (cache == null) {
+			return;
+		}
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			cache.evict(id);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				cache.evict(id);
+			}
+		});
+	}
+
+	@Override
+	@Timed(value = TIMER, histogram = true)
 	public Page<Book> find(Book filter, Pageable pageRequest) {
+		return pages.execute(findKey(filter, pageRequest),
+				() -> readOnly("find", () -> doFind(filter, pageRequest)));
+	}
+
+	private Page<Book> doFind(Book filter, Pageable pageRequest) {
+		if (searchIndex.canSearch(filter, pageRequest)) {
+			return findIndexed(filter, pageRequest);
+		}
+
 		Example<Book> example = Example.of(filter,
 				ExampleMatcher
 						.matching()
@@ -77,4 +307,185 @@ public class BookServiceImpl implements BookService {
 		return repository.findAll(example, pageRequest);
 	}
 
+	private Page<Book> findIndexed(Book filter, Pageable pageRequest) {
+		List<Integer> ids = searchIndex.search(filter);
+		List<Integer> pageIds = pageOf(ids, pageRequest);
+		if (pageIds.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageRequest, ids.size());
+		}
+
+		// one query for the whole page, then back to the ranking order
+		List<Book> books = inOrder(pageIds, repository.findAllById(pageIds), Book::getId);
+		return new PageImpl<>(books, pageRequest, ids.size());
+	}
+
+	@Override
+	@Timed(value = TIMER, histogram = true)
+	public Page<BookDTO> findDTOs(Book filter, Pageable pageRequest) {
+		return dtoPages.execute(findKey(filter, pageRequest),
+				() -> readOnly("findDTOs", () -> doFindDTOs(filter, pageRequest)));
+	}
+
+	/**
+	 * Read-only transaction named after the operation, as @Transactional would
+	 * name it, so routing can tell the operations apart. Opened inside the
+	 * single-flight leader: waiting callers hold no connection.
+	 */
+	private <T> T readOnly(String operation, Supplier<T> read) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.setName(BookServiceImpl.class.getName() + "." + operation);
+		return template.execute(status -> read.get());
+	}
+
+	private Page<BookDTO> doFindDTOs(Book filter, Pageable pageRequest) {
+		if (!searchIndex.canSearch(filter, pageRequest)) {
+			return repository.findDTOs(filter, pageRequest);
+		}
+
+		List<Integer> ids = searchIndex.search(filter);
+		List<Integer> pageIds = pageOf(ids, pageRequest);
+		if (pageIds.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageRequest, ids.size());
+		}
+		List<BookDTO> books = inOrder(pageIds, repository.findDTOsById(pageIds), BookDTO::getId);
+		return new PageImpl<>(books, pageRequest, ids.size());
+	}
+
+	/**
+	 * The filter fields as the queries see them (matching ignores case) plus the
+	 * page, sort included.
+	 */
+	private List<Object> findKey(Book filter, Pageable pageRequest) {
+		return Arrays.asList(filter.getId(), lowerCase(filter.getTitle()), lowerCase(filter.getAuthor()),
+				lowerCase(filter.getIsbn()), pageRequest);
+	}
+
+	private String lowerCase(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+
+	private List<Integer> pageOf(List<Integer> ids, Pageable pageRequest) {
+		int from = (int) Math.min(pageRequest.getOffset(), ids.size());
+		int to = Math.min(from + pageRequest.getPageSize(), ids.size());
+		return ids.subList(from, to);
+	}
+
+	private <T> List<T> inOrder(List<Integer> ids, Iterable<T> rows, Function<T, Integer> idOf) {
+		Map<Integer, T> found = new HashMap<>();
+		rows.forEach(row -> found.put(idOf.apply(row), row));
+		List<T> ordered = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			T row = found.get(id);
+			if (row != null) {
+				ordered.add(row);
+			}
+		}
+		return ordered;
+	}
+
+	@Override
+	@Timed(value = TIMER, histogram = true)
+	public List<BookBatchResult> saveAll(List<Book> books) {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		List<Book> accepted = new ArrayList<>(books.size());
+		for (int attempt = 1; ; attempt++) {
+			boolean useFilter = attempt == 1;
+			try {
+				return transaction.execute(status -> doSaveAll(books, useFilter, accepted));
+			} catch (DataIntegrityViolationException e) {
+				if (!isIsbnViolation(e) || attempt == SAVE_ALL_ATTEMPTS) {
+					throw translate(e);
+				}
+				// an isbn inserted by someone else since the check, or one the filter has not
+				// seen yet: the transaction is gone, so look every isbn up again in a new one
+				// and reject the duplicates per item; the rolled back books become new again
+				accepted.forEach(book -> {
+					book.setId(null);
+					book.setVersion(null);
+				});
+			}
+		}
+	}
+
+	private List<BookBatchResult> doSaveAll(List<Book> books, boolean useFilter, List<Book> accepted) {
+		// isbns the filter has never seen are certainly new and need no lookup
+		Set<String> isbns = new HashSet<>();
+		for (Book book : books) {
+			if (book.getIsbn() != null && (!useFilter || isbnFilter.mightContain(book.getIsbn()))) {
+				isbns.add(book.getIsbn());
+			}
+		}
+		Set<String> existing = isbns.isEmpty()
+				? Collections.emptySet()
+				: new HashSet<>(repository.findExistingIsbns(isbns));
+
+		List<BookBatchResult> results = new ArrayList<>(books.size());
+		accepted.clear();
+		Set<String> seen = new HashSet<>();
+		for (Book book : books) {
+			if (existing.contains(book.getIsbn()) || !seen.add(book.getIsbn())) {
+				results.add(BookBatchResult.rejected(book, DUPLICATED_ISBN));
+			} else {
+				accepted.add(book);
+				results.add(BookBatchResult.created(book));
+			}
+		}
+
+		// new books are persisted in place, so the ids end up in the results above;
+		// the inserts go out in JDBC batches of hibernate.jdbc.batch_size
+		repository.saveAllAndFlush(accepted);
+		eventPublisher.publishEvent(BookChangedEvent.saved(accepted));
+		return results;
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Timed(value = TIMER, histogram = true)
+	public void export(Consumer<Book> consumer) {
+		try (Stream<Book> books = repository.streamAll()) {
+			books.forEach(consumer);
+		}
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Timed(value = TIMER, histogram = true)
+	public Slice<Book> scroll(Book filter, BookCursor cursor, int size) {
+		// one extra row tells whether there is a next slice without counting
+		List<Book> books = repository.findAfter(filter, cursor, size + 1);
+		boolean hasNext = books.size() > size;
+		List<Book> content = hasNext ? books.subList(0, size) : books;
+		return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = STATS_CACHE)
+	@Timed(value = TIMER, histogram = true)
+	public BookStats stats(Book filter, int top, int isbnPrefixLength) {
+		// three GROUP BY / count queries returning scalars, no book is hydrated
+		return new BookStats(
+				repository.countMatching(filter),
+				repository.countByAuthor(filter, top),
+				repository.countByIsbnPrefix(filter, isbnPrefixLength, top));
+	}
+
+	private RuntimeException translate(DataIntegrityViolationException e) {
+		return isIsbnViolation(e) ? new BusinessException(DUPLICATED_ISBN) : e;
+	}
+
+	// shared with ReactiveBookServiceImpl, whose R2DBC errors only carry the constraint in the message
+	static boolean isIsbnViolation(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			String detail = cause instanceof org.hibernate.exception.ConstraintViolationException
+					? ((org.hibernate.exception.ConstraintViolationException) cause).getConstraintName()
+					: cause.getMessage();
+			if (detail != null && detail.toLowerCase(Locale.ROOT).contains(Book.ISBN_CONSTRAINT)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,110 @@
+package br.dev.jstec.library_api.service.impl;
+
+import static org.springframework.data.relational.core.query.Criteria.where;
+import static org.springframework.data.relational.core.query.Query.query;
+
+import java.time.Instant;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.ReactiveBookService;
+import br.dev.jstec.library_api.model.repository.ReactiveBookRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Profile("reactive")
+public class ReactiveBookServiceImpl implements ReactiveBookService {
+
+	private ReactiveBookRepository repository;
+	private R2dbcEntityTemplate template;
+
+	public ReactiveBookServiceImpl(ReactiveBookRepository repository, R2dbcEntityTemplate template) {
+		this.repository = repository;
+		this.template = template;
+	}
+
+	@Override
+	public Mono<Book> save(Book book) {
+		// the unique index on isbn is the duplicate check, as in BookServiceImpl
+		return repository.nextId()
+				.flatMap(id -> {
+					book.setId(id.intValue());
+					book.setLastModified(Instant.now());
+					return template.insert(book);
+				})
+				.onErrorMap(DataIntegrityViolationException.class, this::translate);
+	}
+
+	@Override
+	public Mono<Book> getById(Integer id) {
+		return repository.findById(id);
+	}
+
+	@Override
+	public Mono<Boolean> delete(Integer id) {
+		return template.delete(query(where("id").is(id)), Book.class).map(rows -> rows > 0);
+	}
+
+	@Override
+	public Mono<Book> update(Book book) {
+		// the versioned update fails with OptimisticLockingFailureException when the row moved on
+		return repository.findById(book.getId())
+				.flatMap(current -> {
+					if (book.getVersion() == null) {
+						book.setVersion(current.getVersion());
+					}
+					book.setLastModified(Instant.now());
+					return template.update(book);
+				})
+				.onErrorMap(DataIntegrityViolationException.class, this::translate);
+	}
+
+	@Override
+	public Flux<Book> find(Book filter, Pageable pageRequest) {
+		// rows are emitted as the driver reads them, following the subscriber's demand
+		Query query = query(criteria(filter));
+		query = pageRequest.isPaged() ? query.with(pageRequest) : query.sort(Sort.by("id"));
+		return template.select(query, Book.class);
+	}
+
+	@Override
+	public Mono<Long> count(Book filter) {
+		return template.count(query(criteria(filter)), Book.class);
+	}
+
+	private Criteria criteria(Book filter) {
+		Criteria criteria = Criteria.empty();
+		if (filter == null) {
+			return criteria;
+		}
+		if (filter.getId() != null) {
+			criteria = criteria.and(where("id").is(filter.getId()));
+		}
+		criteria = containing(criteria, "title", filter.getTitle());
+		criteria = containing(criteria, "author", filter.getAuthor());
+		return containing(criteria, "isbn", filter.getIsbn());
+	}
+
+	private Criteria containing(Criteria criteria, String column, String value) {
+		if (value == null) {
+			return criteria;
+		}
+		String escaped = value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+		return criteria.and(where(column).like("%" + escaped + "%").ignoreCase(true));
+	}
+
+	private RuntimeException translate(DataIntegrityViolationException e) {
+		return BookServiceImpl.isIsbnViolation(e) ? new BusinessException(BookServiceImpl.DUPLICATED_ISBN) : e;
+	}
+
+}
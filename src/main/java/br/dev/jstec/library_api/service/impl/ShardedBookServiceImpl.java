@@ -0,0 +1,562 @@
+package br.dev.jstec.library_api.service.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.annotation.Timed;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.BookStats;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.config.ShardingConfiguration;
+import br.dev.jstec.library_api.model.repository.BookShardRepository;
+import br.dev.jstec.library_api.model.repository.BookShards;
+
+/**
+ * {@link BookService} over the partitioned storage of {@link BookShards}
+ * (library.sharding.enabled=true), in place of BookServiceImpl.
+ * 
+ * Point operations go to the shard of the id. Searches, scrolls and stats ask
+ * every shard in parallel on the shard search executor and merge the sorted
+ * answers. Writes of one call are atomic per shard only. A book whose isbn
+ * changes to one of another shard moves there, with a new id.
+ */
+@Service
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "true")
+public class ShardedBookServiceImpl implements BookService {
+
+	public static final String PAGE_TOO_DEEP = "Página além do limite de %d livros, use /api/books/scroll";
+
+	private BookShards shards;
+	private ExecutorService executor;
+	private ApplicationEventPublisher eventPublisher;
+	private CacheManager cacheManager;
+	private LibraryProperties properties;
+
+	public ShardedBookServiceImpl(BookShards shards,
+			@Qualifier(ShardingConfiguration.SEARCH_EXECUTOR) ExecutorService executor,
+			ApplicationEventPublisher eventPublisher, CacheManager cacheManager, LibraryProperties properties) {
+		this.shards = shards;
+		this.executor = executor;
+		this.eventPublisher = eventPublisher;
+		this.cacheManager = cacheManager;
+		this.properties = properties;
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Book save(Book book) {
+		BookShardRepository shard = shards.byIsbn(isbnOf(book));
+		stamp(book, shard);
+		try {
+			shard.insert(Collections.singletonList(book));
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
+		}
+		eventPublisher.publishEvent(BookChangedEvent.saved(book));
+		return book;
+	}
+
+	@Override
+	@Cacheable(cacheNames = BookServiceImpl.BOOKS_CACHE, key = "#id", unless = "#result == null")
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Optional<Book> getById(Integer id) {
+		return Optional.ofNullable(shards.byId(id).findById(id));
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public List<Optional<Book>> getByIds(List<Integer> ids) {
+		Cache cache = cacheManager.getCache(BookServiceImpl.BOOKS_CACHE);
+		Map<Integer, Book> found = new HashMap<>();
+		Map<BookShardRepository, Set<Integer>> missing = new LinkedHashMap<>();
+		for (Integer id : ids) {
+			if (id == null || found.containsKey(id)) {
+				continue;
+			}
+			Book cached = cache == null ? null : cache.get(id, Book.class);
+			if (cached != null) {
+				found.put(id, cached);
+			} else {
+				missing.computeIfAbsent(shards.byId(id), shard -> new LinkedHashSet<>()).add(id);
+			}
+		}
+
+		missing.forEach((shard, shardIds) -> {
+			List<Integer> toRead = new ArrayList<>(shardIds);
+			for (int from = 0; from < toRead.size(); from += BookServiceImpl.IN_CHUNK_SIZE) {
+				int to = Math.min(from + BookServiceImpl.IN_CHUNK_SIZE, toRead.size());
+				for (Book book : shard.findAllById(toRead.subList(from, to))) {
+					found.put(book.getId(), book);
+					if (cache != null) {
+						cache.put(book.getId(), book);
+					}
+				}
+			}
+		});
+
+		List<Optional<Book>> result = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			result.add(Optional.ofNullable(id == null ? null : found.get(id)));
+		}
+		return result;
+	}
+
+	@Override
+	@CacheEvict(cacheNames = BookServiceImpl.BOOKS_CACHE, key = "#book.id")
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public void delete(Book book) {
+		if (book == null || book.getId() == null) {
+			throw new IllegalArgumentException("Book can't be null");
+		}
+		deleteById(book.getId());
+	}
+
+	@Override
+	@CacheEvict(cacheNames = BookServiceImpl.BOOKS_CACHE, key = "#book.id")
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Book update(Book book) {
+		return updateById(book).orElseThrow(() -> new EmptyResultDataAccessException(1));
+	}
+
+	@Override
+	@CacheEvict(cacheNames = BookServiceImpl.BOOKS_CACHE, key = "#id")
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public boolean deleteById(Integer id) {
+		if (id == null) {
+			throw new IllegalArgumentException("Book can't be null");
+		}
+		boolean deleted = shards.byId(id).deleteById(id) > 0;
+		if (deleted) {
+			eventPublisher.publishEvent(BookChangedEvent.deleted(Book.builder().id(id).build()));
+		}
+		return deleted;
+	}
+
+	// evicted rather than put: the returned book is built from the request, with no version when
+	// it came without one; the statement autocommits, so the eviction after the call follows the commit
+	@Override
+	@CacheEvict(cacheNames = BookServiceImpl.BOOKS_CACHE, key = "#book.id",
+			condition = "#book != null && #book.id != null")
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Optional<Book> updateById(Book book) {
+		if (book == null || book.getId() == null) {
+			throw new IllegalArgumentException("Book can't be null");
+		}
+		BookShardRepository shard = shards.byId(book.getId());
+		if (book.getIsbn() != null && shards.byIsbn(book.getIsbn()) != shard) {
+			// only the shard of the isbn checks it for duplicates
+			return move(book, shard, shards.byIsbn(book.getIsbn()));
+		}
+
+		Instant now = Instant.now();
+		int rows;
+		try {
+			rows = shard.update(book, now);
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
+		}
+		if (rows == 0) {
+			if (book.getVersion() != null && shard.existsById(book.getId())) {
+				throw new ObjectOptimisticLockingFailureException(Book.class, book.getId());
+			}
+			return Optional.empty();
+		}
+
+		Book updatedBook = Book.builder()
+				.id(book.getId())
+				.title(book.getTitle())
+				.author(book.getAuthor())
+				.isbn(book.getIsbn())
+				.version(book.getVersion() == null ? null : book.getVersion() + 1)
+				.lastModified(now)
+				.build();
+		eventPublisher.publishEvent(BookChangedEvent.updated(updatedBook));
+		return Optional.of(updatedBook);
+	}
+
+	/**
+	 * Moves the book to the shard of its new isbn, whose unique index then guards
+	 * it. The id carries the shard, so the book gets a new one there. The copy is
+	 * inserted before the original is deleted (checking the version it was read
+	 * with): a concurrent search may briefly see both, never neither, and a
+	 * concurrent change of the original undoes the copy.
+	 */
+	private Optional<Book> move(Book book, BookShardRepository from, BookShardRepository to) {
+		Book current = from.findById(book.getId());
+		if (current == null) {
+			return Optional.empty();
+		}
+		if (book.getVersion() != null && !book.getVersion().equals(current.getVersion())) {
+			throw new ObjectOptimisticLockingFailureException(Book.class, book.getId());
+		}
+
+		Book moved = Book.builder()
+				.id(to.nextId())
+				.title(book.getTitle())
+				.author(book.getAuthor())
+				.isbn(book.getIsbn())
+				.version(current.getVersion() + 1)
+				.lastModified(Instant.now())
+				.build();
+		try {
+			to.insert(Collections.singletonList(moved));
+		} catch (DataIntegrityViolationException e) {
+			throw translate(e);
+		}
+		if (from.deleteById(book.getId(), current.getVersion()) == 0) {
+			to.deleteById(moved.getId());
+			throw new ObjectOptimisticLockingFailureException(Book.class, book.getId());
+		}
+
+		eventPublisher.publishEvent(BookChangedEvent.deleted(Book.builder().id(book.getId()).build()));
+		eventPublisher.publishEvent(BookChangedEvent.saved(moved));
+		return Optional.of(moved);
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Page<Book> find(Book filter, Pageable pageRequest) {
+		Sort sort = pageRequest.getSort();
+		Comparator<Book> order = comparator(sort);
+		// every shard returns its first offset + size matches; the page is somewhere in their merge
+		// so the merge is bounded: an unpaged or deep page would read that much from every shard
+		long offset = pageRequest.isPaged() ? pageRequest.getOffset() : 0;
+		long end = pageRequest.isPaged() ? offset + pageRequest.getPageSize() : Long.MAX_VALUE;
+		int maxOffset = properties.getSharding().getMaxOffset();
+		if (end > maxOffset) {
+			throw new BusinessException(String.format(PAGE_TOO_DEEP, maxOffset));
+		}
+		int limit = (int) end;
+
+		List<ShardPage> pages = onAllShards(shard -> new ShardPage(shard.find(filter, sort, limit),
+				shard.count(filter)));
+
+		long total = 0;
+		List<List<Book>> sorted = new ArrayList<>(pages.size());
+		for (ShardPage page : pages) {
+			total += page.total;
+			sorted.add(page.books);
+		}
+		List<Book> content = merge(sorted, order, offset, limit - offset);
+		return pageRequest.isPaged() ? new PageImpl<>(content, pageRequest, total) : new PageImpl<>(content);
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Page<BookDTO> findDTOs(Book filter, Pageable pageRequest) {
+		return find(filter, pageRequest).map(book -> new BookDTO(book.getId(), book.getTitle(), book.getAuthor(),
+				book.getIsbn(), book.getVersion()));
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public List<BookBatchResult> saveAll(List<Book> books) {
+		Map<BookShardRepository, List<Integer>> positions = new LinkedHashMap<>();
+		for (int i = 0; i < books.size(); i++) {
+			positions.computeIfAbsent(shards.byIsbn(isbnOf(books.get(i))), shard -> new ArrayList<>()).add(i);
+		}
+
+		BookBatchResult[] results = new BookBatchResult[books.size()];
+		List<Book> saved = new ArrayList<>(books.size());
+		try {
+			positions.forEach((shard, indexes) -> saved.addAll(saveAll(shard, books, indexes, results)));
+		} finally {
+			// shards committed before a failure keep their books
+			if (!saved.isEmpty()) {
+				eventPublisher.publishEvent(BookChangedEvent.saved(saved));
+			}
+		}
+		List<BookBatchResult> list = new ArrayList<>(results.length);
+		Collections.addAll(list, results);
+		return list;
+	}
+
+	/**
+	 * The books of one shard in one transaction. An isbn inserted by someone else
+	 * between the lookup and the insert rolls it back; the lookup then runs again
+	 * and sees it, so only that book is rejected, as in BookServiceImpl.saveAll.
+	 */
+	private List<Book> saveAll(BookShardRepository shard, List<Book> books, List<Integer> indexes,
+			BookBatchResult[] results) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return shard.getTransactionTemplate().execute(status -> {
+					Set<String> isbns = new HashSet<>();
+					indexes.forEach(index -> isbns.add(books.get(index).getIsbn()));
+					Set<String> existing = new HashSet<>(shard.findExistingIsbns(isbns));
+
+					List<Book> accepted = new ArrayList<>(indexes.size());
+					Set<String> seen = new HashSet<>();
+					for (Integer index : indexes) {
+						Book book = books.get(index);
+						if (existing.contains(book.getIsbn()) || !seen.add(book.getIsbn())) {
+							results[index] = BookBatchResult.rejected(book, BookServiceImpl.DUPLICATED_ISBN);
+						} else {
+							stamp(book, shard);
+							accepted.add(book);
+							results[index] = BookBatchResult.created(book);
+						}
+					}
+					if (!accepted.isEmpty()) {
+						shard.insert(accepted);
+					}
+					return accepted;
+				});
+			} catch (DataIntegrityViolationException e) {
+				if (!BookServiceImpl.isIsbnViolation(e) || attempt == BookServiceImpl.SAVE_ALL_ATTEMPTS) {
+					throw translate(e);
+				}
+				// rolled back: the books are new again
+				indexes.forEach(index -> {
+					books.get(index).setId(null);
+					books.get(index).setVersion(null);
+					books.get(index).setLastModified(null);
+				});
+			}
+		}
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public void export(Consumer<Book> consumer) {
+		// one shard after the other: the consumer writes to a single response
+		int fetchSize = properties.getExport().getFetchSize();
+		for (BookShardRepository shard : shards.all()) {
+			shard.forEach(fetchSize, consumer);
+		}
+	}
+
+	@Override
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public Slice<Book> scroll(Book filter, BookCursor cursor, int size) {
+		List<List<Book>> sorted = onAllShards(shard -> shard.findAfter(filter, cursor, size + 1));
+		List<Book> books = merge(sorted, comparator(Sort.by(cursor.getDirection(), cursor.getProperty())), 0,
+				size + 1);
+		boolean hasNext = books.size() > size;
+		List<Book> content = hasNext ? books.subList(0, size) : books;
+		return new SliceImpl<>(content, PageRequest.of(0, size), hasNext);
+	}
+
+	@Override
+	@Cacheable(cacheNames = BookServiceImpl.STATS_CACHE)
+	@Timed(value = BookServiceImpl.TIMER, histogram = true)
+	public BookStats stats(Book filter, int top, int isbnPrefixLength) {
+		List<BookStats> perShard = onAllShards(shard -> new BookStats(
+				shard.count(filter),
+				shard.countBy(filter, "author", 0),
+				shard.countBy(filter, "isbn", isbnPrefixLength)));
+
+		long total = 0;
+		Map<String, Long> authors = new HashMap<>();
+		Map<String, Long> prefixes = new HashMap<>();
+		for (BookStats stats : perShard) {
+			total += stats.getTotal();
+			stats.getAuthors().forEach(facet -> authors.merge(facet.getValue(), facet.getCount(), Long::sum));
+			stats.getIsbnPrefixes().forEach(facet -> prefixes.merge(facet.getValue(), facet.getCount(), Long::sum));
+		}
+		return new BookStats(total, top(authors, top), top(prefixes, top));
+	}
+
+	/**
+	 * Runs the query on every shard in parallel and waits for all of them, up to
+	 * library.sharding.search-timeout.
+	 */
+	private <T> List<T> onAllShards(Function<BookShardRepository, T> query) {
+		List<BookShardRepository> all = shards.all();
+		if (all.size() == 1) {
+			return Collections.singletonList(query.apply(all.get(0)));
+		}
+
+		List<Future<T>> futures = new ArrayList<>(all.size());
+		for (BookShardRepository shard : all) {
+			futures.add(executor.submit(() -> query.apply(shard)));
+		}
+
+		Duration timeout = properties.getSharding().getSearchTimeout();
+		long deadline = System.nanoTime() + timeout.toNanos();
+		List<T> results = new ArrayList<>(all.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+			}
+		} catch (TimeoutException e) {
+			futures.forEach(future -> future.cancel(true));
+			throw new QueryTimeoutException("Shards did not answer within " + timeout);
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the shards", e);
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * K-way merge of lists already sorted by the comparator, skipping the first
+	 * offset books and returning at most limit.
+	 */
+	static List<Book> merge(List<List<Book>> sorted, Comparator<Book> order, long offset, long limit) {
+		PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> order.compare(a.book, b.book));
+		for (List<Book> books : sorted) {
+			Iterator<Book> rest = books.iterator();
+			if (rest.hasNext()) {
+				heads.add(new Head(rest.next(), rest));
+			}
+		}
+
+		List<Book> merged = new ArrayList<>((int) Math.min(limit, 1024));
+		long skipped = 0;
+		while (!heads.isEmpty() && merged.size() < limit) {
+			Head head = heads.poll();
+			if (skipped < offset) {
+				skipped++;
+			} else {
+				merged.add(head.book);
+			}
+			if (head.rest.hasNext()) {
+				heads.add(new Head(head.rest.next(), head.rest));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * The order the shards sort by (BookShardRepository adds the id last, in the
+	 * direction of the last order, to break ties).
+	 */
+	static Comparator<Book> comparator(Sort sort) {
+		Comparator<Book> order = null;
+		boolean byId = false;
+		boolean ascending = true;
+		for (Sort.Order property : sort) {
+			Comparator<Book> next = comparator(property.getProperty());
+			if (property.isDescending()) {
+				next = next.reversed();
+			}
+			order = order == null ? next : order.thenComparing(next);
+			byId |= "id".equals(property.getProperty());
+			ascending = property.isAscending();
+		}
+		if (!byId) {
+			Comparator<Book> id = Comparator.comparing(Book::getId);
+			id = ascending ? id : id.reversed();
+			order = order == null ? id : order.thenComparing(id);
+		}
+		return order;
+	}
+
+	private static Comparator<Book> comparator(String property) {
+		switch (property) {
+		case "id":
+			return Comparator.comparing(Book::getId);
+		case "title":
+			return Comparator.comparing(Book::getTitle, Comparator.nullsFirst(Comparator.naturalOrder()));
+		case "author":
+			return Comparator.comparing(Book::getAuthor, Comparator.nullsFirst(Comparator.naturalOrder()));
+		case "isbn":
+			return Comparator.comparing(Book::getIsbn, Comparator.nullsFirst(Comparator.naturalOrder()));
+		default:
+			throw new BusinessException("Ordenação não suportada: " + property);
+		}
+	}
+
+	private static List<BookFacet> top(Map<String, Long> counts, int top) {
+		List<BookFacet> facets = new ArrayList<>(counts.size());
+		counts.forEach((value, count) -> facets.add(new BookFacet(value, count)));
+		facets.sort(Comparator.comparing(BookFacet::getCount).reversed()
+				.thenComparing(BookFacet::getValue, Comparator.nullsFirst(Comparator.naturalOrder())));
+		return facets.size() > top ? new ArrayList<>(facets.subList(0, top)) : facets;
+	}
+
+	private void stamp(Book book, BookShardRepository shard) {
+		book.setId(shard.nextId());
+		book.setVersion(0L);
+		book.setLastModified(Instant.now());
+	}
+
+	private String isbnOf(Book book) {
+		return book.getIsbn() == null ? "" : book.getIsbn();
+	}
+
+	private RuntimeException translate(DataIntegrityViolationException e) {
+		return BookServiceImpl.isIsbnViolation(e) ? new BusinessException(BookServiceImpl.DUPLICATED_ISBN) : e;
+	}
+
+	private static final class ShardPage {
+
+		final List<Book> books;
+		final long total;
+
+		ShardPage(List<Book> books, long total) {
+			this.books = books;
+			this.total = total;
+		}
+
+	}
+
+	private static final class Head {
+
+		final Book book;
+		final Iterator<Book> rest;
+
+		Head(Book book, Iterator<Book> rest) {
+			this.book = book;
+			this.rest = rest;
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+package br.dev.jstec.library_api.service.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call,
+ * the ones arriving while it is in flight wait for it and get the same result
+ * (or exception) instead of running their own.
+ * 
+ * The result may be mutable and, for entities, still attached to the
+ * persistence context of the caller that ran the call. That caller keeps it;
+ * every waiting caller gets its own copy, taken from a snapshot made as the
+ * call returned, so no caller sees another one's changes.
+ * 
+ * Nothing is kept once the call returns, so this only joins calls that overlap
+ * in time; reuse across time is the job of the caches.
+ */
+public class SingleFlight<K, V> {
+
+	public static final String CALLS = "library.singleflight.calls";
+
+	public static final String IN_FLIGHT = "library.singleflight.in.flight";
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final UnaryOperator<V> copy;
+
+	private final Counter leaders;
+	private final Counter coalesced;
+
+	public SingleFlight(String name, UnaryOperator<V> copy, MeterRegistry registry) {
+		this.copy = copy;
+		leaders = Counter.builder(CALLS).tag("name", name).tag("result", "leader")
+				.description("calls that ran the query")
+				.register(registry);
+		coalesced = Counter.builder(CALLS).tag("name", name).tag("result", "coalesced")
+				.description("calls that shared the result of a query already in flight")
+				.register(registry);
+		Gauge.builder(IN_FLIGHT, inFlight, ConcurrentMap::size).tag("name", name).register(registry);
+	}
+
+	public V execute(K key, Supplier<V> call) {
+		CompletableFuture<V> own = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+		if (running != null) {
+			coalesced.increment();
+			V shared = join(running);
+			return shared == null ? null : copy.apply(shared);
+		}
+
+		leaders.increment();
+		try {
+			V result = call.get();
+			own.complete(result == null ? null : copy.apply(result));
+			return result;
+		} catch (RuntimeException | Error e) {
+			own.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, own);
+		}
+	}
+
+	private V join(CompletableFuture<V> running) {
+		try {
+			return running.join();
+		} catch (CompletionException e) {
+			// the leader's own exception, so every caller sees the same error
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package br.dev.jstec.library_api.service.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+/**
+ * In-memory inverted index over title, author and isbn.
+ * 
+ * Terms are kept sorted per field, so a query token matches every term it is
+ * a prefix of with one range scan. All tokens of a filter must match (the same
+ * AND semantics of the Example based find); books are ranked by how many
+ * tokens matched whole words rather than just prefixes. Unlike the Example
+ * queries it does not find substrings inside words, which is why it is opt-in
+ * (library.search.mode=index).
+ * 
+ * Built from the table when the application starts and kept in sync through
+ * {@link BookChangedEvent}s.
+ */
+@Component
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class BookSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(BookSearchIndex.class);
+
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{Alnum}]+");
+
+	private static final char TITLE = 't';
+	private static final char AUTHOR = 'a';
+	private static final char ISBN = 'i';
+
+	private static final int EXACT_SCORE = 2;
+	private static final int PREFIX_SCORE = 1;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** field + token -> ids of the books containing it */
+	private TreeMap<String, Set<Integer>> postings = new TreeMap<>();
+
+	/** id -> terms of the book, to remove it again */
+	private Map<Integer, List<String>> documents = new HashMap<>();
+
+	private List<BookChangedEvent> pending;
+
+	private volatile boolean ready;
+
+	private BookRepository repository;
+	private TransactionTemplate transactionTemplate;
+	private LibraryProperties properties;
+
+	public BookSearchIndex(BookRepository repository, PlatformTransactionManager transactionManager,
+			LibraryProperties properties) {
+		this.repository = repository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.properties = properties;
+	}
+
+	public boolean isEnabled() {
+		return properties.getSearch().getMode() == LibraryProperties.SearchMode.INDEX;
+	}
+
+	/**
+	 * Whether {@link #search(Book)} can answer this find: the index is on and
+	 * built, the filter has some text to look for and the page is ordered by
+	 * relevance (an explicit sort or an id filter goes to the database).
+	 */
+	public boolean canSearch(Book filter, Pageable pageRequest) {
+		if (!ready || !isEnabled() || filter == null || filter.getId() != null) {
+			return false;
+		}
+		if (pageRequest.isUnpaged() || pageRequest.getSort().isSorted()) {
+			return false;
+		}
+		return !tokenize(filter.getTitle()).isEmpty()
+				|| !tokenize(filter.getAuthor()).isEmpty()
+				|| !isbnTokens(filter.getIsbn()).isEmpty();
+	}
+
+	/**
+	 * Ids of the books matching every token of the filter, best ranked first.
+	 */
+	public List<Integer> search(Book filter) {
+		Map<Integer, Integer> scores = null;
+		lock.readLock().lock();
+		try {
+			scores = match(TITLE, tokenize(filter.getTitle()), scores);
+			scores = match(AUTHOR, tokenize(filter.getAuthor()), scores);
+			scores = match(ISBN, isbnTokens(filter.getIsbn()), scores);
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (scores == null || scores.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<Map.Entry<Integer, Integer>> ranked = new ArrayList<>(scores.entrySet());
+		ranked.sort((a, b) -> a.getValue().equals(b.getValue())
+				? a.getKey().compareTo(b.getKey())
+				: b.getValue().compareTo(a.getValue()));
+		List<Integer> ids = new ArrayList<>(ranked.size());
+		for (Map.Entry<Integer, Integer> entry : ranked) {
+			ids.add(entry.getKey());
+		}
+		return ids;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		if (!isEnabled()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			pending = new ArrayList<>();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		TreeMap<String, Set<Integer>> newPostings = new TreeMap<>();
+		Map<Integer, List<String>> newDocuments = new HashMap<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			try (Stream<Book> books = repository.streamAll()) {
+				books.forEach(book -> add(book, newPostings, newDocuments));
+			}
+		});
+
+		lock.writeLock().lock();
+		try {
+			postings = newPostings;
+			documents = newDocuments;
+			// writes committed while the table was being read
+			pending.forEach(this::apply);
+			pending = null;
+			ready = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Search index built with {} books and {} terms", newDocuments.size(), newPostings.size());
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onBookChanged(BookChangedEvent event) {
+		if (!isEnabled()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (pending != null) {
+				pending.add(event);
+			}
+			apply(event);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void apply(BookChangedEvent event) {
+		for (Book book : event.getBooks()) {
+			remove(book.getId());
+			if (event.getType() != BookChangedEvent.Type.DELETED) {
+				add(book, postings, documents);
+			}
+		}
+	}
+
+	private Map<Integer, Integer> match(char field, List<String> tokens, Map<Integer, Integer> scores) {
+		for (String token : tokens) {
+			if (scores != null && scores.isEmpty()) {
+				return scores;
+			}
+			String key = field + token;
+			Map<Integer, Integer> tokenScores = new HashMap<>();
+			for (Map.Entry<String, Set<Integer>> term
+					: postings.subMap(key, true, key + Character.MAX_VALUE, false).entrySet()) {
+				int score = term.getKey().length() == key.length() ? EXACT_SCORE : PREFIX_SCORE;
+				for (Integer id : term.getValue()) {
+					tokenScores.merge(id, score, Math::max);
+				}
+			}
+			if (scores == null) {
+				scores = tokenScores;
+			} else {
+				scores.keySet().retainAll(tokenScores.keySet());
+				scores.replaceAll((id, score) -> score + tokenScores.get(id));
+			}
+		}
+		return scores;
+	}
+
+	private void add(Book book, TreeMap<String, Set<Integer>> postings, Map<Integer, List<String>> documents) {
+		Set<String> terms = new HashSet<>();
+		tokenize(book.getTitle()).forEach(token -> terms.add(TITLE + token));
+		tokenize(book.getAuthor()).forEach(token -> terms.add(AUTHOR + token));
+		isbnTokens(book.getIsbn()).forEach(token -> terms.add(ISBN + token));
+
+		for (String term : terms) {
+			postings.computeIfAbsent(term, key -> new HashSet<>()).add(book.getId());
+		}
+		documents.put(book.getId(), new ArrayList<>(terms));
+	}
+
+	private void remove(Integer id) {
+		List<String> terms = documents.remove(id);
+		if (terms == null) {
+			return;
+		}
+		for (String term : terms) {
+			Set<Integer> ids = postings.get(term);
+			if (ids != null) {
+				ids.remove(id);
+				if (ids.isEmpty()) {
+					postings.remove(term);
+				}
+			}
+		}
+	}
+
+	static List<String> tokenize(String value) {
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		String normalized = DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+		List<String> tokens = new ArrayList<>();
+		for (String token : SEPARATORS.split(normalized.toLowerCase(Locale.ROOT))) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	static List<String> isbnTokens(String isbn) {
+		if (isbn == null) {
+			return Collections.emptyList();
+		}
+		String normalized = SEPARATORS.matcher(isbn.toLowerCase(Locale.ROOT)).replaceAll("");
+		return normalized.isEmpty() ? Collections.emptyList() : Collections.singletonList(normalized);
+	}
+
+}
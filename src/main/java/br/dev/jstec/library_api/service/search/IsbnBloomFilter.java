@@ -0,0 +1,261 @@
+package br.dev.jstec.library_api.service.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+/**
+ * Bloom filter over every isbn of the table.
+ * 
+ * {@link #mightContain(String)} false means the isbn is certainly not
+ * registered, so the database lookup can be skipped; true means it may be, and
+ * the database (or the unique index) decides. Deleted isbns cannot be removed
+ * from a Bloom filter: they stay as false positives until the next
+ * {@link #rebuild()}.
+ * 
+ * Built from the table when the application starts and kept in sync through
+ * {@link BookChangedEvent}s. Until the first build it answers true for everything.
+ */
+@Component
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class IsbnBloomFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(IsbnBloomFilter.class);
+
+	private volatile Bits bits;
+
+	/** filter being built by rebuild(); writes go to both until it replaces bits */
+	private volatile Bits building;
+
+	/** one rebuild at a time, whether from startup or the actuator endpoint */
+	private final ReentrantLock rebuilding = new ReentrantLock();
+
+	/** puts hold the read lock, so none can write only to the old filter after the swap */
+	private final ReentrantReadWriteLock swap = new ReentrantReadWriteLock();
+
+	private final AtomicLong deletions = new AtomicLong();
+
+	private final Counter absent;
+	private final Counter maybe;
+
+	private BookRepository repository;
+	private TransactionTemplate transactionTemplate;
+	private LibraryProperties properties;
+
+	public IsbnBloomFilter(BookRepository repository, PlatformTransactionManager transactionManager,
+			LibraryProperties properties, MeterRegistry registry) {
+		this.repository = repository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.properties = properties;
+
+		absent = Counter.builder("library.isbn.filter.checks").tag("result", "absent").register(registry);
+		maybe = Counter.builder("library.isbn.filter.checks").tag("result", "maybe").register(registry);
+		Gauge.builder("library.isbn.filter.size", this, filter -> filter.sizeInBytes())
+				.baseUnit("bytes")
+				.register(registry);
+		Gauge.builder("library.isbn.filter.insertions", this, filter -> filter.insertions())
+				.register(registry);
+		Gauge.builder("library.isbn.filter.false.positive.rate", this, filter -> filter.expectedFalsePositiveRate())
+				.register(registry);
+		Gauge.builder("library.isbn.filter.deletions", deletions, AtomicLong::get)
+				.description("isbns deleted since the last rebuild, still answered as maybe")
+				.register(registry);
+	}
+
+	public boolean isEnabled() {
+		return properties.getIsbnFilter().isEnabled();
+	}
+
+	public boolean mightContain(String isbn) {
+		Bits current = bits;
+		if (current == null || !isEnabled()) {
+			return true;
+		}
+		boolean result = current.mightContain(hash(isbn));
+		(result ? maybe : absent).increment();
+		return result;
+	}
+
+	/**
+	 * Sizes a new filter for the table and the configured false positive rate,
+	 * fills it from the isbns and swaps it in. Also drops deleted isbns.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		if (!isEnabled()) {
+			return;
+		}
+		rebuilding.lock();
+		try {
+			LibraryProperties.IsbnFilter config = properties.getIsbnFilter();
+			long expected = Math.max(config.getExpectedInsertions(), repository.count() * 2);
+			Bits next = new Bits(expected, config.getFalsePositiveRate());
+			// set before the table is read: a book committed later is put here by onBookChanged
+			building = next;
+			deletions.set(0);
+
+			transactionTemplate.executeWithoutResult(status -> {
+				try (Stream<String> isbns = repository.streamIsbns()) {
+					isbns.forEach(isbn -> next.put(hash(isbn)));
+				}
+			});
+
+			swap.writeLock().lock();
+			try {
+				bits = next;
+				building = null;
+			} finally {
+				swap.writeLock().unlock();
+			}
+			log.info("Isbn filter built with {} isbns in {} bytes and {} hash functions",
+					next.insertions.get(), next.sizeInBytes(), next.hashes);
+		} finally {
+			rebuilding.unlock();
+		}
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onBookChanged(BookChangedEvent event) {
+		if (event.getType() == BookChangedEvent.Type.DELETED) {
+			deletions.addAndGet(event.getBooks().size());
+			return;
+		}
+		for (Book book : event.getBooks()) {
+			put(book.getIsbn());
+		}
+	}
+
+	public long sizeInBytes() {
+		Bits current = bits;
+		return current == null ? 0 : current.sizeInBytes();
+	}
+
+	public long insertions() {
+		Bits current = bits;
+		return current == null ? 0 : current.insertions.get();
+	}
+
+	/**
+	 * (1 - e^(-k n / m))^k for the isbns inserted so far.
+	 */
+	public double expectedFalsePositiveRate() {
+		Bits current = bits;
+		return current == null ? 1.0 : current.expectedFalsePositiveRate();
+	}
+
+	private void put(String isbn) {
+		if (isbn == null) {
+			return;
+		}
+		long hash = hash(isbn);
+		swap.readLock().lock();
+		try {
+			Bits current = bits;
+			if (current != null) {
+				current.put(hash);
+			}
+			Bits next = building;
+			if (next != null) {
+				next.put(hash);
+			}
+		} finally {
+			swap.readLock().unlock();
+		}
+	}
+
+	/**
+	 * FNV-1a over the characters, then the murmur3 finalizer to spread the bits.
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb93fe53e63L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	/**
+	 * The bit array; bits are only ever set, with a CAS per word, so reads need no lock.
+	 */
+	static final class Bits {
+
+		final AtomicLongArray words;
+		final long size;
+		final int hashes;
+		final AtomicLong insertions = new AtomicLong();
+
+		Bits(long expectedInsertions, double falsePositiveRate) {
+			// m = -n ln p / (ln 2)^2 and k = m / n ln 2
+			long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int wordCount = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (bits + 63) / 64));
+			this.words = new AtomicLongArray(wordCount);
+			this.size = (long) wordCount * 64;
+			this.hashes = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+		}
+
+		void put(long hash) {
+			int low = (int) hash;
+			int high = (int) (hash >>> 32);
+			for (int i = 0; i < hashes; i++) {
+				long bit = Math.floorMod(low + (long) i * high, size);
+				int index = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long word;
+				do {
+					word = words.get(index);
+				} while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+			}
+			insertions.incrementAndGet();
+		}
+
+		boolean mightContain(long hash) {
+			int low = (int) hash;
+			int high = (int) (hash >>> 32);
+			for (int i = 0; i < hashes; i++) {
+				long bit = Math.floorMod(low + (long) i * high, size);
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		long sizeInBytes() {
+			return size / 8;
+		}
+
+		double expectedFalsePositiveRate() {
+			return Math.pow(1 - Math.exp(-hashes * (double) insertions.get() / size), hashes);
+		}
+
+	}
+
+}
@@ -0,0 +1,45 @@
+package br.dev.jstec.library_api.service.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * GET /actuator/isbnfilter shows the sizing of {@link IsbnBloomFilter};
+ * POST rebuilds it from the table. A rebuild reads every isbn, so the endpoint
+ * is not in the default web exposure; add it to
+ * management.endpoints.web.exposure.include only behind a secured actuator.
+ */
+@Component
+@Endpoint(id = "isbnfilter")
+@ConditionalOnProperty(prefix = "library.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class IsbnFilterEndpoint {
+
+	private IsbnBloomFilter filter;
+
+	public IsbnFilterEndpoint(IsbnBloomFilter filter) {
+		this.filter = filter;
+	}
+
+	@ReadOperation
+	public Map<String, Object> info() {
+		Map<String, Object> info = new LinkedHashMap<>();
+		info.put("enabled", filter.isEnabled());
+		info.put("sizeInBytes", filter.sizeInBytes());
+		info.put("insertions", filter.insertions());
+		info.put("expectedFalsePositiveRate", filter.expectedFalsePositiveRate());
+		return info;
+	}
+
+	@WriteOperation
+	public Map<String, Object> rebuild() {
+		filter.rebuild();
+		return info();
+	}
+
+}
@@ -0,0 +1,51 @@
+package br.dev.jstec.library_api.api.mapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+public class BookMapperTest {
+
+	BookMapper mapper = new BookMapper();
+
+	@Test
+	@DisplayName("Must map a DTO to a Book")
+	public void toEntityTest() {
+		BookDTO dto = BookDTO.builder().id(1).title("As aventuras").author("Artur").isbn("001").build();
+
+		Book book = mapper.toEntity(dto);
+
+		assertThat(book.getId()).isEqualTo(1);
+		assertThat(book.getTitle()).isEqualTo("As aventuras");
+		assertThat(book.getAuthor()).isEqualTo("Artur");
+		assertThat(book.getIsbn()).isEqualTo("001");
+	}
+
+	@Test
+	@DisplayName("Must map a list of Books to DTOs keeping the order")
+	public void toDTOListTest() {
+		Book first = Book.builder().id(1).title("As aventuras").author("Artur").isbn("001").build();
+		Book second = Book.builder().id(2).title("Outras aventuras").author("Fulano").isbn("002").build();
+
+		List<BookDTO> list = mapper.toDTOList(Arrays.asList(first, second));
+
+		assertThat(list).hasSize(2);
+		assertThat(list.get(0).getId()).isEqualTo(1);
+		assertThat(list.get(1).getIsbn()).isEqualTo("002");
+	}
+
+	@Test
+	@DisplayName("Must return null when mapping null")
+	public void nullTest() {
+		assertThat(mapper.toDTO(null)).isNull();
+		assertThat(mapper.toEntity(null)).isNull();
+	}
+
+}
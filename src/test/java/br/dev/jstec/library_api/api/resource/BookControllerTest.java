@@ -1,11 +1,15 @@
 package br.dev.jstec.library_api.api.resource;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import org.springframework.data.domain.Pageable;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.DisplayName;
@@ -16,9 +20,14 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -28,9 +37,20 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.DTO.BookBulkRequestDTO;
 import br.dev.jstec.library_api.api.DTO.BookDTO;
 import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCreateStatus;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
+import br.dev.jstec.library_api.api.model.BookStats;
 import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookAsyncService;
+import br.dev.jstec.library_api.api.service.BookBulkService;
 import br.dev.jstec.library_api.api.service.BookService;
 
 @ExtendWith(SpringExtension.class)
@@ -47,6 +67,29 @@ public class BookControllerTest {
 	@MockBean
 	BookService service;
 
+	@MockBean
+	BookBulkService bulkService;
+
+	@MockBean
+	BookAsyncService asyncService;
+
+	@MockBean
+	BookJsonCache jsonCache;
+
+	@Autowired
+	MeterRegistry registry;
+
+	@TestConfiguration
+	static class MetricsTestConfiguration {
+
+		// @WebMvcTest leaves out the metrics auto-configuration
+		@Bean
+		public SimpleMeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+	}
+
 	@Test
 	@DisplayName("Must create a new book with success")
 	public void createBookTest() throws Exception {
@@ -148,7 +191,7 @@ public class BookControllerTest {
 	@DisplayName("Must delete a one book")
 	public void deleteBookTest() throws Exception {
 		
-		BDDMockito.given(service.getById(Mockito.anyInt())).willReturn(Optional.of(Book.builder().id(1).build()));
+		BDDMockito.given(service.deleteById(1)).willReturn(true);
 
 		MockHttpServletRequestBuilder request = 
 					MockMvcRequestBuilders.delete(BOOK_API.concat("/"+ 1 ))
@@ -163,7 +206,7 @@ public class BookControllerTest {
 	@DisplayName("Must return status not found when a book do not found to delete")
 	public void deleteInexistentBookTest() throws Exception {
 		
-		BDDMockito.given(service.getById(Mockito.anyInt())).willReturn(Optional.empty());
+		BDDMockito.given(service.deleteById(Mockito.anyInt())).willReturn(false);
 
 		MockHttpServletRequestBuilder request = 
 					MockMvcRequestBuilders.delete(BOOK_API.concat("/"+ 1 ))
@@ -196,11 +239,8 @@ public class BookControllerTest {
 		Integer id = 1;
 		String json = new ObjectMapper().writeValueAsString(createNewBook());
 		
-		Book updatingBook = Book.builder().title("Some Title").author("Some Author").isbn("456").build();
-		BDDMockito.given(service.getById(Mockito.anyInt())).willReturn(Optional.of(updatingBook));
-
 		Book updatedBook = Book.builder().id(1).author("Artur").title("As aventuras").isbn("001").build();
-		BDDMockito.given(service.update(updatingBook)).willReturn(updatedBook);
+		BDDMockito.given(service.updateById(Mockito.any(Book.class))).willReturn(Optional.of(updatedBook));
 		
 		MockHttpServletRequestBuilder request = 
 					MockMvcRequestBuilders.put(BOOK_API.concat("/"+ 1 ))
@@ -216,6 +256,170 @@ public class BookControllerTest {
 		.andExpect(jsonPath("isbn").value(createNewBook().getIsbn()));
 
 	}
+	@Test
+	@DisplayName("Must return not modified when the book version did not change")
+	public void getBookNotModifiedTest() throws Exception {
+
+		Book book = Book.builder().id(1).author("Artur").title("As aventuras").isbn("001").version(3L).build();
+		BDDMockito.given(service.getById(1)).willReturn(Optional.of(book));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"1.3\""));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/1"))
+						.accept(MediaType.APPLICATION_JSON)
+						.header(HttpHeaders.IF_NONE_MATCH, "\"1.3\""))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+	}
+
+	@Test
+	@DisplayName("Must refuse an update based on an old version of the book")
+	public void updateWithStaleVersionTest() throws Exception {
+
+		BDDMockito.given(service.updateById(Mockito.argThat(book -> Long.valueOf(3).equals(book.getVersion()))))
+				.willThrow(new ObjectOptimisticLockingFailureException(Book.class, 1));
+
+		mvc.perform(MockMvcRequestBuilders.put(BOOK_API.concat("/1"))
+						.content(new ObjectMapper().writeValueAsString(createNewBook()))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON)
+						.header(HttpHeaders.IF_MATCH, "\"1.3\""))
+				.andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	@DisplayName("Must accept a book for a later create and tell where to follow it")
+	public void createAsyncTest() throws Exception {
+
+		BDDMockito.given(asyncService.submit(Mockito.any(Book.class)))
+				.willAnswer(invocation -> Optional.of(BookCreateStatus.pending("abc", invocation.getArgument(0))));
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/async"))
+						.content(new ObjectMapper().writeValueAsString(createNewBook()))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isAccepted())
+				.andExpect(header().string(HttpHeaders.LOCATION, "/api/books/async/abc"))
+				.andExpect(jsonPath("id").value("abc"))
+				.andExpect(jsonPath("status").value("PENDING"))
+				.andExpect(jsonPath("book.isbn").value("001"));
+	}
+
+	@Test
+	@DisplayName("Must answer 429 when the create queue is full")
+	public void createAsyncQueueFullTest() throws Exception {
+
+		BDDMockito.given(asyncService.submit(Mockito.any(Book.class))).willReturn(Optional.empty());
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/async"))
+						.content(new ObjectMapper().writeValueAsString(createNewBook()))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+	}
+
+	@Test
+	@DisplayName("Must report a queued book rejected for a duplicated isbn")
+	public void createStatusRejectedTest() throws Exception {
+
+		Book book = Book.builder().author("Artur").title("As aventuras").isbn("001").build();
+		BDDMockito.given(asyncService.status("abc"))
+				.willReturn(Optional.of(BookCreateStatus.rejected("abc", book, "Isbn Já cadastrado")));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/async/abc")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("status").value("REJECTED"))
+				.andExpect(jsonPath("errors[0]").value("Isbn Já cadastrado"));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/async/xyz")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	@DisplayName("Must get many books at once in the requested order")
+	public void getManyTest() throws Exception {
+
+		Book book = Book.builder().id(2).author("Artur").title("As aventuras").isbn("001").build();
+		BDDMockito.given(service.getByIds(Arrays.asList(2, 9))).willReturn(Arrays.asList(Optional.of(book),
+				Optional.empty()));
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("?ids=2,9")).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", Matchers.hasSize(2)))
+				.andExpect(jsonPath("[0].status").value("FOUND"))
+				.andExpect(jsonPath("[0].book.isbn").value("001"))
+				.andExpect(jsonPath("[1].id").value(9))
+				.andExpect(jsonPath("[1].status").value("NOT_FOUND"));
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/multi-get"))
+						.content("[2, 9]")
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("[0].id").value(2))
+				.andExpect(jsonPath("[1].status").value("NOT_FOUND"));
+	}
+
+	@Test
+	@DisplayName("Must delete every book of an author at once")
+	public void bulkDeleteByFilterTest() throws Exception {
+
+		BookBulkRequestDTO bulk = BookBulkRequestDTO.builder()
+				.filter(BookDTO.builder().author("Artur").build())
+				.build();
+		BDDMockito.given(bulkService.delete(Mockito.isNull(),
+				Mockito.argThat(filter -> "Artur".equals(filter.getAuthor())))).willReturn(42L);
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/bulk-delete"))
+						.content(new ObjectMapper().writeValueAsString(bulk))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("affected").value(42));
+	}
+
+	@Test
+	@DisplayName("Must update the author of the given books at once")
+	public void bulkUpdateByIdsTest() throws Exception {
+
+		BookBulkRequestDTO bulk = BookBulkRequestDTO.builder()
+				.ids(Arrays.asList(1, 2, 3))
+				.author("Fulano")
+				.build();
+		BDDMockito.given(bulkService.update(Mockito.eq(Arrays.asList(1, 2, 3)), Mockito.isNull(),
+				Mockito.argThat(changes -> "Fulano".equals(changes.getAuthor()) && changes.getTitle() == null)))
+				.willReturn(3L);
+
+		mvc.perform(MockMvcRequestBuilders.post(BOOK_API.concat("/bulk-update"))
+						.content(new ObjectMapper().writeValueAsString(bulk))
+						.contentType(MediaType.APPLICATION_JSON)
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("affected").value(3));
+	}
+
+	@Test
+	@DisplayName("Must return the total and facets of the matching books")
+	public void statsTest() throws Exception {
+
+		BookStats stats = new BookStats(3,
+				Arrays.asList(new BookFacet("Artur", 2L), new BookFacet("Fulano", 1L)),
+				Arrays.asList(new BookFacet("978-85-", 3L)));
+		BDDMockito.given(service.stats(Mockito.any(Book.class), Mockito.eq(5), Mockito.anyInt())).willReturn(stats);
+
+		mvc.perform(MockMvcRequestBuilders.get(BOOK_API.concat("/stats?title=aventuras&top=5"))
+						.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("total").value(3))
+				.andExpect(jsonPath("authors", Matchers.hasSize(2)))
+				.andExpect(jsonPath("authors[0].value").value("Artur"))
+				.andExpect(jsonPath("authors[0].count").value(2))
+				.andExpect(jsonPath("isbnPrefixes[0].value").value("978-85-"));
+	}
+
 	@Test
 	@DisplayName("Must return selected books")
 	public void findBookTest() throws Exception {
@@ -227,9 +431,9 @@ public class BookControllerTest {
 				.isbn(createNewBook().getIsbn())
 				.build();
 
-		BDDMockito.given( service.find(Mockito.any(Book.class),
+		BDDMockito.given( service.findDTOs(Mockito.any(Book.class),
 						Mockito.any(Pageable.class) ))
-				.willReturn( new PageImpl<>(Arrays.asList(book), PageRequest.of(0,100),1));
+				.willReturn( new PageImpl<>(Arrays.asList(createNewBook()), PageRequest.of(0,100),1));
 
 		String queryString = String.format("?title=%s&author=%s&page=0&size=100", book.getTitle(), book.getAuthor() );
 
@@ -247,6 +451,150 @@ public class BookControllerTest {
 
 	}
 
+	@Test
+	@DisplayName("Must create a batch of books returning one result per item")
+	public void createBatchTest() throws Exception {
+
+		BookDTO valid = createNewBook();
+		BookDTO duplicated = BookDTO.builder().author("Fulano").title("Outras aventuras").isbn("002").build();
+		BookDTO invalid = new BookDTO();
+
+		Book savedBook = Book.builder().id(101).author("Artur").title("As aventuras").isbn("001").build();
+		Book rejectedBook = Book.builder().author("Fulano").title("Outras aventuras").isbn("002").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList()))
+				.willReturn(Arrays.asList(BookBatchResult.created(savedBook),
+						BookBatchResult.rejected(rejectedBook, "Isbn Já cadastrado")));
+
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(valid, invalid, duplicated));
 
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		mvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", Matchers.hasSize(3)))
+				.andExpect(jsonPath("[0].status").value("CREATED"))
+				.andExpect(jsonPath("[0].book.id").value(101))
+				.andExpect(jsonPath("[1].status").value("REJECTED"))
+				.andExpect(jsonPath("[1].errors", Matchers.hasSize(3)))
+				.andExpect(jsonPath("[2].status").value("REJECTED"))
+				.andExpect(jsonPath("[2].index").value(2))
+				.andExpect(jsonPath("[2].errors[0]").value("Isbn Já cadastrado"));
+
+	}
+
+	@Test
+	@DisplayName("Must count validation errors in the application registry")
+	public void validationErrorsMetricTest() throws Exception {
+
+		double before = registry.get(BookController.ERRORS).tag("type", "validation").counter().count();
+		String json = new ObjectMapper().writeValueAsString(new BookDTO());
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API)
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		mvc.perform(request).andExpect(status().isBadRequest());
+		assertThat(registry.get(BookController.ERRORS).tag("type", "validation").counter().count())
+				.isEqualTo(before + 1);
+
+	}
+
+	@Test
+	@DisplayName("Must reject null items of a batch without failing the others")
+	public void createBatchNullItemTest() throws Exception {
+
+		Book savedBook = Book.builder().id(101).author("Artur").title("As aventuras").isbn("001").build();
+		BDDMockito.given(service.saveAll(Mockito.anyList()))
+				.willReturn(Arrays.asList(BookBatchResult.created(savedBook)));
+
+		String json = new ObjectMapper().writeValueAsString(Arrays.asList(null, createNewBook()));
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.post(BOOK_API.concat("/batch"))
+				.contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_JSON).content(json);
+
+		mvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", Matchers.hasSize(2)))
+				.andExpect(jsonPath("[0].status").value("REJECTED"))
+				.andExpect(jsonPath("[0].errors", Matchers.hasSize(1)))
+				.andExpect(jsonPath("[1].status").value("CREATED"));
+
+	}
+
+	@Test
+	@DisplayName("Must export every book as newline delimited json")
+	public void exportNdjsonTest() throws Exception {
+
+		Book first = Book.builder().id(1).author("Artur").title("As aventuras").isbn("001").build();
+		Book second = Book.builder().id(2).author("Fulano").title("Outras aventuras").isbn("002").build();
+		BDDMockito.willAnswer(invocation -> {
+			Consumer<Book> consumer = invocation.getArgument(0);
+			consumer.accept(first);
+			consumer.accept(second);
+			return null;
+		}).given(service).export(Mockito.any());
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export"));
+
+		mvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+				.andExpect(content().string(
+						"{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}\n"
+						+ "{\"id\":2,\"title\":\"Outras aventuras\",\"author\":\"Fulano\",\"isbn\":\"002\"}\n"));
+	}
+
+	@Test
+	@DisplayName("Must export every book as csv")
+	public void exportCsvTest() throws Exception {
+
+		Book book = Book.builder().id(1).author("Artur, o Rei").title("As \"aventuras\"").isbn("001").build();
+		BDDMockito.willAnswer(invocation -> {
+			Consumer<Book> consumer = invocation.getArgument(0);
+			consumer.accept(book);
+			return null;
+		}).given(service).export(Mockito.any());
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/export?format=csv"));
+
+		mvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(content().string("id,title,author,isbn\n1,\"As \"\"aventuras\"\"\",\"Artur, o Rei\",001\n"));
+	}
+
+	@Test
+	@DisplayName("Must return a slice of books with a cursor to the next one")
+	public void scrollBookTest() throws Exception {
+
+		Book first = Book.builder().id(1).author("Artur").title("As aventuras").isbn("001").build();
+		Book second = Book.builder().id(2).author("Artur").title("Outras aventuras").isbn("002").build();
+
+		BDDMockito.given(service.scroll(Mockito.any(Book.class), Mockito.any(BookCursor.class), Mockito.eq(2)))
+				.willReturn(new SliceImpl<>(Arrays.asList(first, second), PageRequest.of(0, 2), true));
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/scroll?author=Artur&size=2"))
+				.accept(MediaType.APPLICATION_JSON);
+
+		String nextCursor = BookCursor.first("id", org.springframework.data.domain.Sort.Direction.ASC).next(second).encode();
+
+		mvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("content", Matchers.hasSize(2)))
+				.andExpect(jsonPath("hasNext").value(true))
+				.andExpect(jsonPath("nextCursor").value(nextCursor))
+				.andExpect(jsonPath("totalElements").doesNotExist());
+	}
+
+	@Test
+	@DisplayName("Must return bad request for an invalid cursor")
+	public void scrollInvalidCursorTest() throws Exception {
+
+		MockHttpServletRequestBuilder request = MockMvcRequestBuilders.get(BOOK_API.concat("/scroll?cursor=invalido"))
+				.accept(MediaType.APPLICATION_JSON);
+
+		mvc.perform(request)
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("errors[0]").value("Cursor inválido"));
+	}
 
 }
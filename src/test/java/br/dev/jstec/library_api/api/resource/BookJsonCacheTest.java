@@ -0,0 +1,77 @@
+package br.dev.jstec.library_api.api.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+
+public class BookJsonCacheTest {
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	@DisplayName("Must write the JSON serialized once for the same version")
+	public void hitTest() throws Exception {
+
+		BookJsonCache cache = cache(false);
+		Book book = book(1L, "As aventuras");
+
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		assertThat(cache.write(book, first)).isTrue();
+		assertThat(cache.write(book, second)).isTrue();
+
+		assertThat(second.getContentAsString())
+				.isEqualTo(first.getContentAsString())
+				.isEqualTo("{\"id\":1,\"title\":\"As aventuras\",\"author\":\"Artur\",\"isbn\":\"001\"}");
+		assertThat(registry.get(BookJsonCache.REQUESTS).tag("result", "hit").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Must serialize again after an update, also from direct buffers")
+	public void updateTest() throws Exception {
+
+		BookJsonCache cache = cache(true);
+		cache.write(book(1L, "As aventuras"), new MockHttpServletResponse());
+
+		cache.onBookChanged(BookChangedEvent.updated(book(2L, "Volta ao mundo")));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		cache.write(book(2L, "Volta ao mundo"), response);
+
+		assertThat(response.getContentAsString()).contains("Volta ao mundo");
+		assertThat(registry.get(BookJsonCache.REQUESTS).tag("result", "miss").counter().count()).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Must leave books without a version and the disabled cache to Jackson")
+	public void notCachedTest() throws Exception {
+
+		assertThat(cache(false).write(book(null, "As aventuras"), new MockHttpServletResponse())).isFalse();
+
+		BookJsonCache disabled = new BookJsonCache(new LibraryProperties(), new BookMapper(), new ObjectMapper(),
+				registry);
+		assertThat(disabled.write(book(1L, "As aventuras"), new MockHttpServletResponse())).isFalse();
+	}
+
+	private BookJsonCache cache(boolean offHeap) {
+		LibraryProperties properties = new LibraryProperties();
+		properties.getJsonCache().setEnabled(true);
+		properties.getJsonCache().setOffHeap(offHeap);
+		return new BookJsonCache(properties, new BookMapper(), new ObjectMapper(), registry);
+	}
+
+	private Book book(Long version, String title) {
+		return Book.builder().id(1).title(title).author("Artur").isbn("001").version(version).build();
+	}
+
+}
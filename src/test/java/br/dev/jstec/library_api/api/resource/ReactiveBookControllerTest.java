@@ -0,0 +1,98 @@
+package br.dev.jstec.library_api.api.resource;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.ReactiveBookService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles({ "test", "reactive" })
+@WebFluxTest(ReactiveBookController.class)
+public class ReactiveBookControllerTest {
+
+	static String BOOK_API = "/api/books";
+
+	@Autowired
+	WebTestClient client;
+
+	@MockBean
+	ReactiveBookService service;
+
+	@Test
+	@DisplayName("Must create a new book on the reactive stack")
+	public void createBookTest() {
+
+		Book savedBook = Book.builder().id(101).author("Artur").title("As aventuras").isbn("001").build();
+		BDDMockito.given(service.save(Mockito.any(Book.class))).willReturn(Mono.just(savedBook));
+
+		client.post().uri(BOOK_API)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(createNewBook())
+				.exchange()
+				.expectStatus().isCreated()
+				.expectBody()
+				.jsonPath("id").isEqualTo(101)
+				.jsonPath("isbn").isEqualTo("001");
+	}
+
+	@Test
+	@DisplayName("Must reject a duplicated isbn on the reactive stack")
+	public void createBookWithISBNDuplicated() {
+
+		BDDMockito.given(service.save(Mockito.any(Book.class)))
+				.willReturn(Mono.error(new BusinessException("Isbn Já cadastrado")));
+
+		client.post().uri(BOOK_API)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(createNewBook())
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("errors[0]").isEqualTo("Isbn Já cadastrado");
+	}
+
+	@Test
+	@DisplayName("Must return not found for a missing book on the reactive stack")
+	public void bookNotFoundTest() {
+
+		BDDMockito.given(service.getById(1)).willReturn(Mono.empty());
+
+		client.get().uri(BOOK_API + "/1").exchange().expectStatus().isNotFound();
+	}
+
+	@Test
+	@DisplayName("Must stream books as ndjson on the reactive stack")
+	public void exportBooksTest() {
+
+		Book first = Book.builder().id(1).author("Artur").title("As aventuras").isbn("001").build();
+		Book second = Book.builder().id(2).author("Fulano").title("Outras aventuras").isbn("002").build();
+		BDDMockito.given(service.find(Mockito.any(Book.class), Mockito.eq(Pageable.unpaged())))
+				.willReturn(Flux.just(first, second));
+
+		client.get().uri(BOOK_API + "/export")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBodyList(BookDTO.class).hasSize(2);
+	}
+
+	private BookDTO createNewBook() {
+		return BookDTO.builder().author("Artur").title("As aventuras").isbn("001").build();
+	}
+}
@@ -0,0 +1,29 @@
+package br.dev.jstec.library_api.benchmark;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.dev.jstec.library_api.service.search.BookSearchIndex;
+
+/**
+ * Fills the embedded H2 of a benchmark context with generated books.
+ */
+final class BenchmarkData {
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Inserts books 1..count in a single statement, moves book_seq past them
+	 * and rebuilds the search index. Authors repeat every 1000 books.
+	 */
+	static void seed(ConfigurableApplicationContext context, int count) {
+		JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+		jdbc.update("insert into book (id, title, author, isbn, version, last_modified) "
+				+ "select x, concat('Title ', x), concat('Author ', mod(x, 1000)), concat('isbn-', x), 0, current_timestamp "
+				+ "from system_range(1, ?)", count);
+		jdbc.execute("alter sequence book_seq restart with " + (count + 100));
+		context.getBean(BookSearchIndex.class).rebuild();
+	}
+
+}
@@ -0,0 +1,121 @@
+package br.dev.jstec.library_api.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import br.dev.jstec.library_api.LibraryApiApplication;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+/**
+ * Controller, service and repository hot paths against the embedded H2
+ * filled with {@link #books} generated books.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookApiBenchmark {
+
+	@Param({ "10000", "1000000" })
+	int books;
+
+	@Param({ "INDEX", "EXAMPLE" })
+	String searchMode;
+
+	ConfigurableApplicationContext context;
+	BookService service;
+	BookRepository repository;
+	MockMvc mvc;
+
+	AtomicLong isbns = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(LibraryApiApplication.class)
+				.properties("server.port=0", "logging.level.root=WARN", "library.search.mode=" + searchMode)
+				.run();
+		BenchmarkData.seed(context, books);
+
+		service = context.getBean(BookService.class);
+		repository = context.getBean(BookRepository.class);
+		mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public Optional<Book> repositoryFindById() {
+		return repository.findById(randomId());
+	}
+
+	@Benchmark
+	public Optional<Book> serviceGetById() {
+		return service.getById(randomId());
+	}
+
+	@Benchmark
+	public Page<Book> serviceFindByTitle() {
+		return service.find(Book.builder().title(String.valueOf(randomId())).build(), PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<Book> serviceFindByAuthor() {
+		return service.find(Book.builder().author("Author 7").build(), PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Book serviceSave() {
+		return service.save(Book.builder().title("Benchmark").author("JMH").isbn("jmh-" + isbns.incrementAndGet()).build());
+	}
+
+	@Benchmark
+	public MvcResult controllerGet() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books/{id}", randomId())).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult controllerFind() throws Exception {
+		return mvc.perform(MockMvcRequestBuilders.get("/api/books")
+				.param("title", String.valueOf(randomId()))
+				.param("page", "0")
+				.param("size", "20"))
+				.andReturn();
+	}
+
+	private int randomId() {
+		return ThreadLocalRandom.current().nextInt(1, books + 1);
+	}
+
+}
@@ -0,0 +1,92 @@
+package br.dev.jstec.library_api.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.mapper.BookMapper;
+import br.dev.jstec.library_api.api.model.entity.Book;
+
+/**
+ * Compares the old ModelMapper path used by BookController with {@link BookMapper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BookMapperBenchmark {
+
+	@Param({ "20", "100" })
+	int pageSize;
+
+	ModelMapper modelMapper;
+	BookMapper bookMapper;
+
+	BookDTO dto;
+	Book book;
+	List<Book> page;
+
+	@Setup
+	public void setUp() {
+		modelMapper = new ModelMapper();
+		bookMapper = new BookMapper();
+
+		dto = BookDTO.builder().title("As aventuras").author("Artur").isbn("001").build();
+		book = Book.builder().id(1).title("As aventuras").author("Artur").isbn("001").build();
+
+		page = new ArrayList<>(pageSize);
+		for (int i = 0; i < pageSize; i++) {
+			page.add(Book.builder().id(i).title("Title " + i).author("Author " + i).isbn("isbn-" + i).build());
+		}
+	}
+
+	@Benchmark
+	public Book modelMapperToEntity() {
+		return modelMapper.map(dto, Book.class);
+	}
+
+	@Benchmark
+	public Book bookMapperToEntity() {
+		return bookMapper.toEntity(dto);
+	}
+
+	@Benchmark
+	public BookDTO modelMapperToDTO() {
+		return modelMapper.map(book, BookDTO.class);
+	}
+
+	@Benchmark
+	public BookDTO bookMapperToDTO() {
+		return bookMapper.toDTO(book);
+	}
+
+	@Benchmark
+	public List<BookDTO> modelMapperPage() {
+		return page.stream()
+				.map(entity -> modelMapper.map(entity, BookDTO.class))
+				.collect(Collectors.toList());
+	}
+
+	@Benchmark
+	public List<BookDTO> bookMapperPage() {
+		return bookMapper.toDTOList(page);
+	}
+
+}
@@ -0,0 +1,142 @@
+package br.dev.jstec.library_api.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.dev.jstec.library_api.LibraryApiApplication;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.config.StatementCounter;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+/**
+ * Load-then-write through the repository (findById, then save/delete) against
+ * updateById/deleteById of the service, which load the book from the
+ * second-level cache when it is there. The statements counter reports SQL
+ * statements per call next to the latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BookWriteBenchmark {
+
+	static final int BOOKS = 10000;
+
+	ConfigurableApplicationContext context;
+	BookService service;
+	BookRepository repository;
+	JdbcTemplate jdbc;
+
+	AtomicInteger nextId = new AtomicInteger(BOOKS * 10);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(LibraryApiApplication.class)
+				.properties("server.port=0", "logging.level.root=WARN")
+				.run();
+		BenchmarkData.seed(context, BOOKS);
+
+		service = context.getBean(BookService.class);
+		repository = context.getBean(BookRepository.class);
+		jdbc = context.getBean(JdbcTemplate.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Statements {
+
+		public long statements;
+
+		void add() {
+			statements += StatementCounter.current();
+		}
+
+	}
+
+	/**
+	 * A fresh row for each delete, inserted outside the measured call.
+	 */
+	@State(Scope.Thread)
+	public static class DeletableBook {
+
+		int id;
+
+		@Setup(Level.Invocation)
+		public void insert(BookWriteBenchmark benchmark) {
+			id = benchmark.nextId.incrementAndGet();
+			benchmark.jdbc.update("insert into book (id, title, author, isbn, version, last_modified) "
+					+ "values (?, 'Title', 'Author', ?, 0, current_timestamp)", id, "delete-" + id);
+		}
+
+	}
+
+	@Benchmark
+	public Book loadThenUpdate(Statements statements) {
+		StatementCounter.reset();
+		Book book = repository.findById(randomId()).get();
+		book.setTitle("Title " + ThreadLocalRandom.current().nextInt());
+		Book updated = repository.save(book);
+		statements.add();
+		return updated;
+	}
+
+	@Benchmark
+	public Object updateById(Statements statements) {
+		StatementCounter.reset();
+		int id = randomId();
+		Object updated = service.updateById(Book.builder()
+				.id(id)
+				.title("Title " + ThreadLocalRandom.current().nextInt())
+				.author("Author " + id % 1000)
+				.isbn("isbn-" + id)
+				.build());
+		statements.add();
+		return updated;
+	}
+
+	@Benchmark
+	public void loadThenDelete(DeletableBook book, Statements statements) {
+		StatementCounter.reset();
+		repository.delete(repository.findById(book.id).get());
+		statements.add();
+	}
+
+	@Benchmark
+	public boolean deleteById(DeletableBook book, Statements statements) {
+		StatementCounter.reset();
+		boolean deleted = service.deleteById(book.id);
+		statements.add();
+		return deleted;
+	}
+
+	private int randomId() {
+		return ThreadLocalRandom.current().nextInt(1, BOOKS + 1);
+	}
+
+}
@@ -0,0 +1,90 @@
+package br.dev.jstec.library_api.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.config.RateLimitFilter;
+import br.dev.jstec.library_api.config.TokenBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Cost of RateLimitFilter per request, against a chain that does nothing, with
+ * 8 threads sharing one client's bucket (worst case for the CAS) or spread over
+ * many clients.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RateLimitBenchmark {
+
+	static final int CLIENTS = 10_000;
+
+	static final FilterChain NOTHING = (request, response) -> { };
+
+	RateLimitFilter filter;
+	TokenBucket bucket;
+
+	@State(Scope.Thread)
+	public static class Exchange {
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/books/1");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+	}
+
+	@Setup
+	public void setUp() {
+		LibraryProperties.RateLimit properties = new LibraryProperties.RateLimit();
+		// never refuses: measures the bookkeeping only
+		properties.setReads(new LibraryProperties.Budget(1e9, Integer.MAX_VALUE / 2));
+		properties.setMaxConcurrentRequests(1000);
+		filter = new RateLimitFilter(properties, new SimpleMeterRegistry());
+		bucket = new TokenBucket(1e9, Integer.MAX_VALUE / 2, System.nanoTime());
+	}
+
+	@Benchmark
+	public long tokenBucket() {
+		return bucket.tryAcquire(System.nanoTime());
+	}
+
+	@Benchmark
+	public MockHttpServletResponse withoutFilter(Exchange exchange) throws Exception {
+		NOTHING.doFilter(exchange.request, exchange.response);
+		return exchange.response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse filterOneClient(Exchange exchange) throws Exception {
+		filter.doFilter(exchange.request, exchange.response, NOTHING);
+		return exchange.response;
+	}
+
+	@Benchmark
+	public MockHttpServletResponse filterManyClients(Exchange exchange) throws Exception {
+		exchange.request.setRemoteAddr("10.0." + ThreadLocalRandom.current().nextInt(CLIENTS));
+		filter.doFilter(exchange.request, exchange.response, NOTHING);
+		return exchange.response;
+	}
+
+}
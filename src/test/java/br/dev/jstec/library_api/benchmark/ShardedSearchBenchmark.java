@@ -0,0 +1,103 @@
+package br.dev.jstec.library_api.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookShardRepository;
+import br.dev.jstec.library_api.model.repository.BookShards;
+import br.dev.jstec.library_api.service.impl.ShardedBookServiceImpl;
+
+/**
+ * CONTAINING searches over the same books spread on 1 to 8 H2 shards: each
+ * shard scans its part in parallel, then the pages are merged.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShardedSearchBenchmark {
+
+	static final int BOOKS = 200_000;
+
+	@Param({ "1", "2", "4", "8" })
+	int shardCount;
+
+	BookShards shards;
+	ExecutorService executor;
+	ShardedBookServiceImpl service;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<BookShardRepository> repositories = new ArrayList<>(shardCount);
+		for (int shard = 0; shard < shardCount; shard++) {
+			HikariDataSource pool = new HikariDataSource();
+			pool.setJdbcUrl("jdbc:h2:mem:benchmark-" + shardCount + "-" + shard + ";DB_CLOSE_DELAY=-1");
+			pool.setUsername("sa");
+			pool.setMaximumPoolSize(4);
+			BookShardRepository repository = new BookShardRepository(shard, shardCount, pool);
+			repository.createSchema();
+			// ids of this shard only, the same books as one table of BOOKS rows
+			new JdbcTemplate(pool).update("insert into book (id, title, author, isbn, version, last_modified) "
+					+ "select x, concat('Title ', x), concat('Author ', mod(x, 1000)), concat('isbn-', x), 0, "
+					+ "current_timestamp from system_range(1, ?) where mod(x, ?) = ?", BOOKS, shardCount, shard);
+			repositories.add(repository);
+		}
+		shards = new BookShards(repositories);
+		executor = Executors.newFixedThreadPool(Math.max(2, shardCount));
+		service = new ShardedBookServiceImpl(shards, executor, Mockito.mock(ApplicationEventPublisher.class),
+				new NoOpCacheManager(), new LibraryProperties());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		executor.shutdown();
+		for (BookShardRepository shard : shards.all()) {
+			new JdbcTemplate(shard.getDataSource()).execute("shutdown");
+		}
+		shards.close();
+	}
+
+	@Benchmark
+	public Page<Book> containingTitle() {
+		return service.find(Book.builder().title("title 1" + ThreadLocalRandom.current().nextInt(100)).build(),
+				PageRequest.of(0, 20));
+	}
+
+	@Benchmark
+	public Page<Book> containingAuthorSortedByTitle() {
+		return service.find(Book.builder().author("author " + ThreadLocalRandom.current().nextInt(1000)).build(),
+				PageRequest.of(2, 20, Sort.by("title")));
+	}
+
+}
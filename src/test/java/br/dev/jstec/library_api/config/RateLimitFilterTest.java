@@ -0,0 +1,208 @@
+package br.dev.jstec.library_api.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import br.dev.jstec.library_api.config.RateLimitFilter.Operation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RateLimitFilterTest {
+
+	LibraryProperties.RateLimit properties = new LibraryProperties.RateLimit();
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@BeforeEach
+	public void setUp() {
+		// practically no refill during a test: only the burst is available
+		properties.setReads(new LibraryProperties.Budget(0.001, 3));
+		properties.setSearches(new LibraryProperties.Budget(0.001, 2));
+		properties.setWrites(new LibraryProperties.Budget(0.001, 1));
+		properties.setMaxConcurrencyWait(Duration.ZERO);
+	}
+
+	@Test
+	@DisplayName("Must refill the bucket at the configured rate up to the burst")
+	public void tokenBucketTest() {
+
+		long second = TimeUnit.SECONDS.toNanos(1);
+		TokenBucket bucket = new TokenBucket(2, 2, 0);
+
+		assertThat(bucket.tryAcquire(0)).isZero();
+		assertThat(bucket.tryAcquire(0)).isZero();
+		assertThat(bucket.tryAcquire(0)).isEqualTo(second / 2);
+		assertThat(bucket.tryAcquire(second / 2)).isZero();
+		assertThat(bucket.tryAcquire(second / 2)).isPositive();
+
+		// idle for long: back to the burst, not more
+		assertThat(bucket.tryAcquire(10 * second)).isZero();
+		assertThat(bucket.tryAcquire(10 * second)).isZero();
+		assertThat(bucket.tryAcquire(10 * second)).isPositive();
+	}
+
+	@Test
+	@DisplayName("Must answer 429 once a client used its budget, without touching other budgets or clients")
+	public void limitTest() throws Exception {
+
+		RateLimitFilter filter = new RateLimitFilter(properties, registry);
+
+		assertThat(status(filter, search("10.0.0.1"))).isEqualTo(200);
+		assertThat(status(filter, search("10.0.0.1"))).isEqualTo(200);
+		MockHttpServletResponse limited = send(filter, search("10.0.0.1"), (req, res) -> { });
+		assertThat(limited.getStatus()).isEqualTo(429);
+		assertThat(limited.getHeader(HttpHeaders.RETRY_AFTER)).isNotNull();
+		assertThat(limited.getContentAsString()).contains("errors");
+
+		assertThat(status(filter, request("GET", "/api/books/1", "10.0.0.1"))).isEqualTo(200);
+		assertThat(status(filter, search("10.0.0.2"))).isEqualTo(200);
+
+		assertThat(registry.get(RateLimitFilter.REQUESTS).tag("operation", "search").tag("result", "limited")
+				.counter().count()).isEqualTo(1);
+		assertThat(registry.get(RateLimitFilter.REQUESTS).tag("operation", "search").tag("result", "allowed")
+				.counter().count()).isEqualTo(3);
+	}
+
+	@Test
+	@DisplayName("Must not hand out fresh buckets for a different api key header")
+	public void clientHeaderIgnoredTest() throws Exception {
+
+		RateLimitFilter filter = new RateLimitFilter(properties, registry);
+
+		for (int i = 0; i < 3; i++) {
+			MockHttpServletRequest request = search("10.0.0.1");
+			request.addHeader("X-API-Key", "key-" + i);
+			assertThat(status(filter, request)).isEqualTo(i < 2 ? 200 : 429);
+		}
+	}
+
+	@Test
+	@DisplayName("Must shed requests beyond the concurrency limit with 503")
+	public void concurrencyTest() throws Exception {
+
+		properties.setMaxConcurrentRequests(1);
+		properties.setReads(new LibraryProperties.Budget(1000, 1000));
+		RateLimitFilter filter = new RateLimitFilter(properties, registry);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<MockHttpServletResponse> slow = CompletableFuture.supplyAsync(() -> {
+			try {
+				return send(filter, request("GET", "/api/books/1", "10.0.0.1"), (req, res) -> {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(status(filter, request("GET", "/api/books/2", "10.0.0.2"))).isEqualTo(503);
+		assertThat(registry.get(RateLimitFilter.IN_FLIGHT).gauge().value()).isEqualTo(1);
+
+		release.countDown();
+		assertThat(slow.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+		assertThat(status(filter, request("GET", "/api/books/2", "10.0.0.2"))).isEqualTo(200);
+		assertThat(registry.get(RateLimitFilter.ADMISSIONS).tag("result", "shed").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Must keep exports out of the request slots and limit them on their own")
+	public void exportConcurrencyTest() throws Exception {
+
+		properties.setMaxConcurrentRequests(1);
+		properties.setMaxConcurrentExports(1);
+		properties.setReads(new LibraryProperties.Budget(1000, 1000));
+		properties.setSearches(new LibraryProperties.Budget(1000, 1000));
+		RateLimitFilter filter = new RateLimitFilter(properties, registry);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<MockHttpServletResponse> export = CompletableFuture.supplyAsync(() -> {
+			try {
+				return send(filter, request("GET", "/api/books/export", "10.0.0.1"), (req, res) -> {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(status(filter, request("GET", "/api/books/2", "10.0.0.2"))).isEqualTo(200);
+		assertThat(status(filter, request("GET", "/api/books/export", "10.0.0.2"))).isEqualTo(503);
+		assertThat(registry.get(RateLimitFilter.EXPORTS_IN_FLIGHT).gauge().value()).isEqualTo(1);
+		assertThat(registry.get(RateLimitFilter.IN_FLIGHT).gauge().value()).isZero();
+
+		release.countDown();
+		assertThat(export.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(200);
+		assertThat(registry.get(RateLimitFilter.EXPORTS).tag("result", "shed").counter().count()).isEqualTo(1);
+		assertThat(registry.get(RateLimitFilter.ADMISSIONS).tag("result", "shed").counter().count()).isZero();
+	}
+
+	@Test
+	@DisplayName("Must tell reads, searches and writes apart by method and path")
+	public void operationTest() {
+
+		assertThat(RateLimitFilter.operation(request("GET", "/api/books/7", null))).isEqualTo(Operation.READ);
+		assertThat(RateLimitFilter.operation(request("GET", "/api/books/async/x", null))).isEqualTo(Operation.READ);
+		assertThat(RateLimitFilter.operation(request("POST", "/api/books/multi-get", null))).isEqualTo(Operation.READ);
+		MockHttpServletRequest ids = request("GET", "/api/books", null);
+		ids.setParameter("ids", "1,2");
+		assertThat(RateLimitFilter.operation(ids)).isEqualTo(Operation.READ);
+
+		assertThat(RateLimitFilter.operation(request("GET", "/api/books", null))).isEqualTo(Operation.SEARCH);
+		assertThat(RateLimitFilter.operation(request("GET", "/api/books/stats", null))).isEqualTo(Operation.SEARCH);
+		assertThat(RateLimitFilter.operation(request("GET", "/api/books/export", null))).isEqualTo(Operation.SEARCH);
+
+		assertThat(RateLimitFilter.operation(request("POST", "/api/books", null))).isEqualTo(Operation.WRITE);
+		assertThat(RateLimitFilter.operation(request("PUT", "/api/books/7", null))).isEqualTo(Operation.WRITE);
+		assertThat(RateLimitFilter.operation(request("DELETE", "/api/books/7", null))).isEqualTo(Operation.WRITE);
+	}
+
+	private MockHttpServletRequest search(String client) {
+		return request("GET", "/api/books", client);
+	}
+
+	private MockHttpServletRequest request(String method, String uri, String client) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+		if (client != null) {
+			request.setRemoteAddr(client);
+		}
+		return request;
+	}
+
+	private int status(RateLimitFilter filter, MockHttpServletRequest request) throws Exception {
+		return send(filter, request, (req, res) -> { }).getStatus();
+	}
+
+	private MockHttpServletResponse send(RateLimitFilter filter, MockHttpServletRequest request, FilterChain chain)
+			throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, chain);
+		return response;
+	}
+
+}
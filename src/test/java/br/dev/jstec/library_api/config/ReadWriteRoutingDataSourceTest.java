@@ -0,0 +1,98 @@
+package br.dev.jstec.library_api.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Two H2 databases standing for the primary and the replica, each answering
+ * with its own name.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+	LibraryProperties.Routing properties = new LibraryProperties.Routing();
+
+	JdbcTemplate jdbc;
+
+	DataSourceTransactionManager transactionManager;
+
+	@BeforeEach
+	public void setUp() {
+		DriverManagerDataSource primary = database("primary");
+		DriverManagerDataSource replica = database("replica");
+
+		ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(properties, new SimpleMeterRegistry());
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(ReadWriteRoutingDataSource.Target.PRIMARY, primary);
+		targets.put(ReadWriteRoutingDataSource.Target.REPLICA, replica);
+		routing.setTargetDataSources(targets);
+		routing.setDefaultTargetDataSource(primary);
+		routing.afterPropertiesSet();
+
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+		jdbc = new JdbcTemplate(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+	}
+
+	@Test
+	@DisplayName("Must read in read-only transactions from the replica and write on the primary")
+	public void routingTest() {
+
+		assertThat(read("getById")).isEqualTo("replica");
+		assertThat(write()).isEqualTo("primary");
+		assertThat(jdbc.queryForObject("select name from node", String.class)).isEqualTo("primary");
+	}
+
+	@Test
+	@DisplayName("Must keep operations that tolerate less lag on the primary right after a write")
+	public void lagToleranceTest() {
+
+		properties.setReplicaLag(Duration.ofMinutes(1));
+		properties.getMaxLag().put("getById", Duration.ZERO);
+		properties.getMaxLag().put("find", Duration.ofMinutes(5));
+
+		assertThat(read("getById")).isEqualTo("replica");
+		write();
+		assertThat(read("getById")).isEqualTo("primary");
+		assertThat(read("find")).isEqualTo("replica");
+		assertThat(read("stats")).isEqualTo("replica");
+	}
+
+	private String read(String operation) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		template.setName("br.dev.jstec.library_api.service.impl.BookServiceImpl." + operation);
+		return template.execute(status -> jdbc.queryForObject("select name from node", String.class));
+	}
+
+	private String write() {
+		return new TransactionTemplate(transactionManager).execute(status -> {
+			jdbc.update("update node set writes = writes + 1");
+			return jdbc.queryForObject("select name from node", String.class);
+		});
+	}
+
+	private DriverManagerDataSource database(String name) {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+		JdbcTemplate template = new JdbcTemplate(dataSource);
+		template.execute("drop table if exists node");
+		template.execute("create table node (name varchar(20), writes int)");
+		template.update("insert into node values (?, 0)", name);
+		return dataSource;
+	}
+
+}
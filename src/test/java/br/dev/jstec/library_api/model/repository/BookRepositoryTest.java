@@ -2,7 +2,11 @@ package br.dev.jstec.library_api.model.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -10,9 +14,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import br.dev.jstec.library_api.api.DTO.BookDTO;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookFacet;
 import br.dev.jstec.library_api.api.model.entity.Book;
 
 @ExtendWith(SpringExtension.class)
@@ -63,6 +73,20 @@ public class BookRepositoryTest {
 	}
 	
 	
+	@Test
+	@DisplayName("Must increment the version of an updated Book")
+	public void versionIncrementTest() {
+		Book book = Book.builder().title("As aventuras").author("fulano").isbn("123").build();
+		entityManager.persistAndFlush(book);
+		assertThat(book.getVersion()).isZero();
+		assertThat(book.getLastModified()).isNotNull();
+
+		book.setTitle("Novas aventuras");
+		Book updatedBook = repository.saveAndFlush(book);
+
+		assertThat(updatedBook.getVersion()).isEqualTo(1L);
+	}
+
 	@Test
 	@DisplayName("Must update a Book")
 	public void saveBookTest() {
@@ -90,8 +114,88 @@ public class BookRepositoryTest {
 		
 		assertThat(deletedBook).isNull();
 	}
-	
-	
-	
-	
+
+	@Test
+	@DisplayName("Must count the matching books per author and isbn prefix")
+	public void facetCountsTest() {
+		entityManager.persist(Book.builder().title("As aventuras").author("fulano").isbn("978-85-1").build());
+		entityManager.persist(Book.builder().title("Outras aventuras").author("fulano").isbn("978-85-2").build());
+		entityManager.persist(Book.builder().title("Mais aventuras").author("ciclano").isbn("978-65-3").build());
+		entityManager.persist(Book.builder().title("Poemas").author("fulano").isbn("978-85-4").build());
+		Book filter = Book.builder().title("aventuras").build();
+
+		List<BookFacet> authors = repository.countByAuthor(filter, 10);
+		List<BookFacet> prefixes = repository.countByIsbnPrefix(filter, 6, 1);
+
+		assertThat(repository.countMatching(filter)).isEqualTo(3);
+		assertThat(authors).extracting(BookFacet::getValue).containsExactly("fulano", "ciclano");
+		assertThat(authors).extracting(BookFacet::getCount).containsExactly(2L, 1L);
+		assertThat(prefixes).extracting(BookFacet::getValue).containsExactly("978-85");
+	}
+
+	@Test
+	@DisplayName("Must read a page of matching books as DTOs without managing them")
+	public void findDTOsTest() {
+		entityManager.persist(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		entityManager.persist(Book.builder().title("Outras aventuras").author("Fulano").isbn("456").build());
+		entityManager.persist(Book.builder().title("Poemas").author("ciclano").isbn("789").build());
+		entityManager.flush();
+		entityManager.clear();
+
+		Page<BookDTO> page = repository.findDTOs(Book.builder().author("FULANO").build(),
+				PageRequest.of(0, 1, Sort.by("isbn").descending()));
+
+		assertThat(page.getTotalElements()).isEqualTo(2);
+		assertThat(page.getContent()).extracting(BookDTO::getIsbn).containsExactly("456");
+		assertThat(page.getContent().get(0).getVersion()).isZero();
+	}
+
+	@Test
+	@DisplayName("Must return only the ISBNs already registered")
+	public void findExistingIsbnsTest() {
+		entityManager.persist(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		entityManager.persist(Book.builder().title("Outras aventuras").author("fulano").isbn("456").build());
+
+		List<String> existing = repository.findExistingIsbns(Arrays.asList("123", "789"));
+
+		assertThat(existing).containsExactly("123");
+	}
+
+	@Test
+	@DisplayName("Must stream every Book ordered by id and detached")
+	public void streamAllTest() {
+		Book first = Book.builder().title("As aventuras").author("fulano").isbn("123").build();
+		Book second = Book.builder().title("Outras aventuras").author("fulano").isbn("456").build();
+		entityManager.persist(first);
+		entityManager.persist(second);
+		entityManager.flush();
+		entityManager.clear();
+
+		List<Book> books;
+		try (Stream<Book> stream = repository.streamAll()) {
+			books = stream.collect(Collectors.toList());
+		}
+
+		assertThat(books).extracting(Book::getIsbn).containsExactly("123", "456");
+		assertThat(entityManager.getEntityManager().contains(books.get(0))).isFalse();
+	}
+
+	@Test
+	@DisplayName("Must seek the next Books after the cursor")
+	public void findAfterTest() {
+		entityManager.persist(Book.builder().title("B aventuras").author("fulano").isbn("1").build());
+		entityManager.persist(Book.builder().title("A aventuras").author("fulano").isbn("2").build());
+		entityManager.persist(Book.builder().title("A aventuras").author("fulano").isbn("3").build());
+		entityManager.persist(Book.builder().title("C outras").author("beltrano").isbn("4").build());
+
+		Book filter = Book.builder().title("AVENTURA").build();
+		BookCursor cursor = BookCursor.first("title", Sort.Direction.ASC);
+
+		List<Book> firstSlice = repository.findAfter(filter, cursor, 2);
+		List<Book> secondSlice = repository.findAfter(filter, cursor.next(firstSlice.get(1)), 2);
+
+		assertThat(firstSlice).extracting(Book::getIsbn).containsExactly("2", "3");
+		assertThat(secondSlice).extracting(Book::getIsbn).containsExactly("1");
+	}
+
 }
@@ -0,0 +1,140 @@
+package br.dev.jstec.library_api.model.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.service.impl.BookServiceImpl;
+import br.dev.jstec.library_api.service.search.BookSearchIndex;
+import br.dev.jstec.library_api.service.search.IsbnBloomFilter;
+
+/**
+ * Each repository call runs in its own transaction, so reads can only be served
+ * by the second-level and query caches, never by a shared persistence context.
+ */
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class BookSecondLevelCacheTest {
+
+	@Autowired
+	BookRepository repository;
+
+	@Autowired
+	EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	Statistics statistics;
+
+	@BeforeEach
+	public void setUp() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		repository.deleteAllInBatch();
+		entityManagerFactory.getCache().evictAll();
+	}
+
+	@Test
+	@DisplayName("Must load a Book by id from the second-level cache without SQL")
+	public void findByIdIsCachedTest() {
+		Book book = repository.save(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		statistics.clear();
+
+		repository.findById(book.getId());
+		repository.findById(book.getId());
+
+		assertThat(statistics.getPrepareStatementCount()).isZero();
+		assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Must answer a repeated existsByIsbn from the query cache until the table changes")
+	public void existsByIsbnIsCachedTest() {
+		repository.save(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		statistics.clear();
+
+		repository.existsByIsbn("456");
+		repository.existsByIsbn("456");
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+		assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+
+		repository.save(Book.builder().title("Outras aventuras").author("fulano").isbn("456").build());
+		statistics.clear();
+
+		assertThat(repository.existsByIsbn("456")).isTrue();
+		assertThat(statistics.getQueryCacheHitCount()).isZero();
+	}
+
+	@Test
+	@DisplayName("Must keep the other cached Books when one is updated or deleted by id")
+	public void writeByIdEvictsOnlyThatBookTest() {
+		Book updated = repository.save(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		Book deleted = repository.save(Book.builder().title("Outras aventuras").author("fulano").isbn("456").build());
+		Book other = repository.save(Book.builder().title("Mais aventuras").author("ciclano").isbn("789").build());
+		entityManagerFactory.getCache().evictAll();
+		repository.findById(other.getId());
+		assertThat(entityManagerFactory.getCache().contains(Book.class, other.getId())).isTrue();
+
+		BookService service = new BookServiceImpl(repository, Mockito.mock(BookSearchIndex.class),
+				Mockito.mock(IsbnBloomFilter.class), Mockito.mock(ApplicationEventPublisher.class), transactionManager,
+				new NoOpCacheManager(), new SimpleMeterRegistry());
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.execute(status -> service.updateById(
+				Book.builder().id(updated.getId()).title("Novas aventuras").author("fulano").isbn("123").build()));
+		transaction.execute(status -> service.deleteById(deleted.getId()));
+
+		assertThat(entityManagerFactory.getCache().contains(Book.class, other.getId())).isTrue();
+		assertThat(repository.findById(updated.getId()).get().getTitle()).isEqualTo("Novas aventuras");
+		assertThat(repository.findById(deleted.getId())).isEmpty();
+	}
+
+	@Test
+	@DisplayName("Must not fill the second-level cache while streaming the catalog")
+	public void streamAllBypassesCacheTest() {
+		Book book = repository.save(Book.builder().title("As aventuras").author("fulano").isbn("123").build());
+		entityManagerFactory.getCache().evictAll();
+
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		long count = transaction.execute(status -> {
+			try (Stream<Book> books = repository.streamAll()) {
+				return books.count();
+			}
+		});
+
+		assertThat(count).isEqualTo(1);
+		assertThat(entityManagerFactory.getCache().contains(Book.class, book.getId())).isFalse();
+	}
+
+}
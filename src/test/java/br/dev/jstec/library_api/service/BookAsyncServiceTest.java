@@ -0,0 +1,133 @@
+package br.dev.jstec.library_api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCreateStatus;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.service.impl.BookAsyncServiceImpl;
+
+public class BookAsyncServiceTest {
+
+	BookService service = Mockito.mock(BookService.class);
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	BookAsyncServiceImpl asyncService;
+
+	@BeforeEach
+	public void setUp() {
+		LibraryProperties properties = new LibraryProperties();
+		properties.getAsyncCreate().setQueueCapacity(2);
+		asyncService = new BookAsyncServiceImpl(service, properties, registry);
+	}
+
+	@Test
+	@DisplayName("Deve salvar os livros da fila em um único saveAll")
+	public void flushSavesQueuedBooksTogetherTest() {
+
+		Book first = book("001");
+		Book second = book("002");
+		String firstId = asyncService.submit(first).get().getId();
+		String secondId = asyncService.submit(second).get().getId();
+		assertThat(asyncService.status(firstId).get().getState()).isEqualTo(BookCreateStatus.State.PENDING);
+		assertThat(registry.get(BookAsyncServiceImpl.QUEUE_DEPTH).gauge().value()).isEqualTo(2);
+
+		Mockito.when(service.saveAll(Arrays.asList(first, second))).thenReturn(Arrays.asList(
+				BookBatchResult.created(first),
+				BookBatchResult.rejected(second, "Isbn Já cadastrado")));
+
+		assertThat(asyncService.flush()).isEqualTo(2);
+
+		assertThat(asyncService.status(firstId).get().getState()).isEqualTo(BookCreateStatus.State.CREATED);
+		BookCreateStatus rejected = asyncService.status(secondId).get();
+		assertThat(rejected.getState()).isEqualTo(BookCreateStatus.State.REJECTED);
+		assertThat(rejected.getError()).isEqualTo("Isbn Já cadastrado");
+		assertThat(registry.get(BookAsyncServiceImpl.FLUSH).timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Não deve perder o status de livros ainda na fila por causa do limite de status")
+	public void pendingStatusesAreNotEvictedTest() {
+
+		LibraryProperties properties = new LibraryProperties();
+		properties.getAsyncCreate().setMaxStatuses(1);
+		asyncService = new BookAsyncServiceImpl(service, properties, registry);
+
+		String firstId = asyncService.submit(book("001")).get().getId();
+		String secondId = asyncService.submit(book("002")).get().getId();
+		String thirdId = asyncService.submit(book("003")).get().getId();
+
+		assertThat(asyncService.status(firstId)).isPresent();
+		assertThat(asyncService.status(secondId)).isPresent();
+		assertThat(asyncService.status(thirdId).get().getState()).isEqualTo(BookCreateStatus.State.PENDING);
+	}
+
+	@Test
+	@DisplayName("Deve recusar livros quando a fila está cheia")
+	public void queueFullTest() {
+
+		asyncService.submit(book("001"));
+		asyncService.submit(book("002"));
+
+		assertThat(asyncService.submit(book("003"))).isEmpty();
+		assertThat(registry.get(BookAsyncServiceImpl.SUBMITTED).tag("result", "queue_full").counter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Deve salvar um a um quando o lote é desfeito por um isbn duplicado")
+	public void flushFallsBackToOneByOneTest() {
+
+		String firstId = asyncService.submit(book("001")).get().getId();
+		String secondId = asyncService.submit(book("002")).get().getId();
+
+		Mockito.when(service.saveAll(Mockito.anyList())).thenThrow(new BusinessException("Isbn Já cadastrado"));
+		Mockito.when(service.save(Mockito.argThat(book -> book != null && "001".equals(book.getIsbn()))))
+				.thenAnswer(invocation -> {
+					Book saved = invocation.getArgument(0);
+					saved.setId(1);
+					return saved;
+				});
+		Mockito.when(service.save(Mockito.argThat(book -> book != null && "002".equals(book.getIsbn()))))
+				.thenThrow(new BusinessException("Isbn Já cadastrado"));
+
+		asyncService.flush();
+
+		BookCreateStatus created = asyncService.status(firstId).get();
+		assertThat(created.getState()).isEqualTo(BookCreateStatus.State.CREATED);
+		assertThat(created.getBook().getId()).isEqualTo(1);
+		assertThat(asyncService.status(secondId).get().getState()).isEqualTo(BookCreateStatus.State.REJECTED);
+	}
+
+	@Test
+	@DisplayName("Deve marcar o lote como falho quando o banco falha")
+	public void flushFailureTest() {
+
+		String id = asyncService.submit(book("001")).get().getId();
+		Mockito.when(service.saveAll(Mockito.anyList())).thenThrow(new IllegalStateException("banco fora"));
+
+		asyncService.flush();
+
+		BookCreateStatus failed = asyncService.status(id).get();
+		assertThat(failed.getState()).isEqualTo(BookCreateStatus.State.FAILED);
+		assertThat(failed.getError()).isEqualTo(BookAsyncServiceImpl.FLUSH_ERROR);
+	}
+
+	private Book book(String isbn) {
+		return Book.builder().title("As Aventuras").author("Fulano").isbn(isbn).build();
+	}
+
+}
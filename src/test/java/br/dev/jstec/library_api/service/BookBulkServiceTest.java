@@ -0,0 +1,103 @@
+package br.dev.jstec.library_api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookBulkService;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+import br.dev.jstec.library_api.service.impl.BookBulkServiceImpl;
+import br.dev.jstec.library_api.service.impl.BookServiceImpl;
+
+public class BookBulkServiceTest {
+
+	BookBulkService service;
+
+	BookRepository repository = Mockito.mock(BookRepository.class);
+
+	PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+	CacheManager cacheManager = new ConcurrentMapCacheManager(BookServiceImpl.BOOKS_CACHE);
+
+	@BeforeEach
+	public void setUp() {
+		LibraryProperties properties = new LibraryProperties();
+		properties.getBulk().setChunkSize(2);
+		service = new BookBulkServiceImpl(repository, transactionManager, cacheManager,
+				Mockito.mock(ApplicationEventPublisher.class), properties);
+	}
+
+	@Test
+	@DisplayName("Deve excluir os ids em lotes, um commit por lote")
+	public void deleteByIdsInChunksTest() {
+
+		Mockito.when(repository.removeByIds(Mockito.anyCollection()))
+				.thenAnswer(invocation -> invocation.<java.util.Collection<?>>getArgument(0).size());
+		cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).put(5, Book.builder().id(5).build());
+
+		long affected = service.delete(Arrays.asList(1, 2, 3, 4, 5), null);
+
+		assertThat(affected).isEqualTo(5);
+		Mockito.verify(repository).removeByIds(Arrays.asList(1, 2));
+		Mockito.verify(repository).removeByIds(Arrays.asList(3, 4));
+		Mockito.verify(repository).removeByIds(Collections.singletonList(5));
+		Mockito.verify(transactionManager, Mockito.times(3)).commit(Mockito.any());
+		assertThat(cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).get(5)).isNull();
+	}
+
+	@Test
+	@DisplayName("Deve atualizar os livros do filtro percorrendo os ids em ordem")
+	public void updateByFilterInChunksTest() {
+
+		Book filter = Book.builder().author("Artur").build();
+		Mockito.when(repository.findIds(filter, null, 2)).thenReturn(Arrays.asList(1, 7));
+		Mockito.when(repository.findIds(filter, 7, 2)).thenReturn(Collections.singletonList(9));
+		Mockito.when(repository.updateByIds(Mockito.anyCollection(), Mockito.isNull(), Mockito.eq("Fulano"), Mockito.any()))
+				.thenAnswer(invocation -> invocation.<java.util.Collection<?>>getArgument(0).size());
+
+		long affected = service.update(null, filter, Book.builder().author("Fulano").build());
+
+		assertThat(affected).isEqualTo(3);
+		Mockito.verify(repository, Mockito.times(2)).findIds(Mockito.eq(filter), Mockito.any(), Mockito.eq(2));
+		// the books for the search index are read as DTOs, never as managed entities
+		Mockito.verify(repository, Mockito.times(2)).findDTOsById(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.never()).findAllById(Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Deve recusar uma operação em lote sem ids nem filtro")
+	public void rejectUnboundedBulkTest() {
+
+		Assertions.assertThatThrownBy(() -> service.delete(null, new Book()))
+				.isInstanceOf(BusinessException.class);
+		Mockito.verifyNoInteractions(repository);
+	}
+
+	@Test
+	@DisplayName("Deve recusar um filtro só com campos em branco")
+	public void rejectBlankFilterTest() {
+
+		Book blank = Book.builder().title("").author("  ").build();
+
+		Assertions.assertThatThrownBy(() -> service.delete(null, blank))
+				.isInstanceOf(BusinessException.class);
+		Assertions.assertThatThrownBy(() -> service.update(null, blank, Book.builder().title("Novo").build()))
+				.isInstanceOf(BusinessException.class);
+		Mockito.verifyNoInteractions(repository);
+	}
+
+}
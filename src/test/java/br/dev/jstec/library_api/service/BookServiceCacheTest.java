@@ -0,0 +1,112 @@
+package br.dev.jstec.library_api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+import br.dev.jstec.library_api.service.impl.BookServiceImpl;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+public class BookServiceCacheTest {
+
+	@Autowired
+	BookService service;
+
+	@Autowired
+	CacheManager cacheManager;
+
+	@MockBean
+	BookRepository repository;
+
+	@BeforeEach
+	public void setUp() {
+		cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).clear();
+		cacheManager.getCache(BookServiceImpl.STATS_CACHE).clear();
+	}
+
+	@Test
+	@DisplayName("Deve reaproveitar as estatísticas do mesmo filtro")
+	public void statsAreCachedTest() {
+		Mockito.when(repository.countMatching(Mockito.any())).thenReturn(3L);
+		Mockito.when(repository.countByAuthor(Mockito.any(), Mockito.anyInt())).thenReturn(java.util.Collections.emptyList());
+		Mockito.when(repository.countByIsbnPrefix(Mockito.any(), Mockito.anyInt(), Mockito.anyInt()))
+				.thenReturn(java.util.Collections.emptyList());
+
+		service.stats(Book.builder().author("Fulano").build(), 10, 7);
+		service.stats(Book.builder().author("Fulano").build(), 10, 7);
+		service.stats(Book.builder().author("Ciclano").build(), 10, 7);
+
+		Mockito.verify(repository, Mockito.times(2)).countMatching(Mockito.any());
+	}
+
+	@Test
+	@DisplayName("Deve buscar o Livro no banco apenas uma vez")
+	public void getByIdIsCachedTest() {
+		Book book = Book.builder().id(1).title("As Aventuras").author("Fulano").isbn("123").build();
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(book));
+
+		service.getById(1);
+		Optional<Book> foundBook = service.getById(1);
+
+		assertThat(foundBook).isPresent();
+		Mockito.verify(repository, Mockito.times(1)).findById(1);
+	}
+
+	@Test
+	@DisplayName("Não deve guardar em cache um Livro inexistente")
+	public void missIsNotCachedTest() {
+		Mockito.when(repository.findById(1)).thenReturn(Optional.empty());
+
+		service.getById(1);
+		service.getById(1);
+
+		Mockito.verify(repository, Mockito.times(2)).findById(1);
+	}
+
+	@Test
+	@DisplayName("Deve invalidar o cache ao excluir um Livro")
+	public void deleteEvictsTest() {
+		Book book = Book.builder().id(1).title("As Aventuras").author("Fulano").isbn("123").build();
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(book));
+
+		service.getById(1);
+		service.delete(book);
+		service.getById(1);
+
+		Mockito.verify(repository, Mockito.times(2)).findById(1);
+	}
+
+	@Test
+	@DisplayName("Deve atualizar o cache ao alterar um Livro")
+	public void updateRefreshesTest() {
+		Book book = Book.builder().id(1).title("As Aventuras").author("Fulano").isbn("123").build();
+		Book updatedBook = Book.builder().id(1).title("Novas Aventuras").author("Fulano").isbn("123").build();
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(book));
+		Mockito.when(repository.save(Mockito.any(Book.class))).thenReturn(updatedBook);
+
+		service.getById(1);
+		service.update(Book.builder().id(1).title("Novas Aventuras").author("Fulano").isbn("123").build());
+		Optional<Book> foundBook = service.getById(1);
+
+		assertThat(foundBook.get().getTitle()).isEqualTo("Novas Aventuras");
+		Mockito.verify(repository, Mockito.times(1)).findById(1);
+	}
+
+}
@@ -0,0 +1,79 @@
+package br.dev.jstec.library_api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.api.service.BookService;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+@ExtendWith(SpringExtension.class)
+@ActiveProfiles("test")
+@SpringBootTest
+public class BookServiceConcurrencyTest {
+
+	static final int THREADS = 8;
+
+	@Autowired
+	BookService service;
+
+	@Autowired
+	BookRepository repository;
+
+	@AfterEach
+	public void tearDown() {
+		repository.deleteAll();
+	}
+
+	@Test
+	@DisplayName("Apenas um de vários cadastros simultâneos do mesmo isbn deve ser salvo")
+	public void concurrentDuplicatedIsbnTest() throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			String title = "As Aventuras " + i;
+			results.add(executor.submit(() -> {
+				start.await();
+				try {
+					service.save(Book.builder().isbn("123").author("Fulano").title(title).build());
+					return true;
+				} catch (BusinessException e) {
+					assertThat(e).hasMessage("Isbn Já cadastrado");
+					return false;
+				}
+			}));
+		}
+		start.countDown();
+
+		int created = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get(30, TimeUnit.SECONDS)) {
+				created++;
+			}
+		}
+		executor.shutdown();
+
+		assertThat(created).isEqualTo(1);
+		assertThat(repository.count()).isEqualTo(1);
+	}
+
+}
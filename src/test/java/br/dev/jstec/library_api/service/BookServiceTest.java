@@ -3,28 +3,57 @@ package br.dev.jstec.library_api.service;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.ArrayList;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.assertj.core.api.Assertions;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.DTO.BookDTO;
 import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCursor;
 import br.dev.jstec.library_api.api.model.entity.Book;
 import br.dev.jstec.library_api.api.service.BookService;
 import br.dev.jstec.library_api.model.repository.BookRepository;
 import br.dev.jstec.library_api.service.impl.BookServiceImpl;
+import br.dev.jstec.library_api.service.impl.SingleFlight;
+import br.dev.jstec.library_api.service.search.BookSearchIndex;
+import br.dev.jstec.library_api.service.search.IsbnBloomFilter;
 
 @ExtendWith(SpringExtension.class)
 @ActiveProfiles("test")
@@ -34,10 +63,27 @@ public class BookServiceTest {
 	@MockBean
 	BookRepository repository;
 	
+	@MockBean
+	BookSearchIndex searchIndex;
+
+	@MockBean
+	IsbnBloomFilter isbnFilter;
+	
+	ApplicationEventPublisher eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+
+	PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(BookServiceImpl.BOOKS_CACHE);
+	
 	
 	@BeforeEach
 	public void  setUp() {
-		this.service = new BookServiceImpl(repository);
+		Mockito.when(transactionManager.getTransaction(Mockito.any())).thenReturn(new SimpleTransactionStatus());
+		this.service = new BookServiceImpl(repository, searchIndex, isbnFilter, eventPublisher, transactionManager,
+				cacheManager, registry);
+		Mockito.when(isbnFilter.mightContain(Mockito.anyString())).thenReturn(true);
 	}
 	
 	@Test
@@ -107,7 +153,9 @@ public class BookServiceTest {
 	public void shouldNotSaveABookWithDuplicatedISBN() {
 		
 		Book book = createValidBook();
-		Mockito.when(repository.existsByIsbn(Mockito.anyString())).thenReturn(true);
+		Mockito.when(repository.save(book)).thenThrow(new DataIntegrityViolationException("could not execute statement",
+				new ConstraintViolationException("Unique index or primary key violation", null,
+						"\"PUBLIC.UK_BOOK_ISBN_INDEX_2 ON PUBLIC.BOOK(ISBN NULLS FIRST)\"")));
 		
 		Throwable exception = Assertions.catchThrowable(() -> service.save(book));
 		
@@ -115,7 +163,7 @@ public class BookServiceTest {
 							.isInstanceOf(BusinessException.class)
 							.hasMessage("Isbn Já cadastrado");
 		
-		Mockito.verify(repository, Mockito.never()).save(book);
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
 		
 	}
 	
@@ -142,6 +190,58 @@ public class BookServiceTest {
 		Mockito.verify(repository, Mockito.never()).delete(book);
 		
 	}
+	@Test
+	@DisplayName("Deve excluir um livro pelo id")
+	public void deleteByIdTest() {
+
+		Book book = createValidBook();
+		book.setId(1);
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(book));
+		Mockito.when(repository.findById(2)).thenReturn(Optional.empty());
+
+		assertThat(service.deleteById(1)).isTrue();
+		assertThat(service.deleteById(2)).isFalse();
+		Mockito.verify(repository, Mockito.times(1)).delete(book);
+	}
+
+	@Test
+	@DisplayName("Deve atualizar um livro pelo id e versão")
+	public void updateByIdTest() {
+
+		Book book = createValidBook();
+		book.setId(1);
+		book.setVersion(3L);
+		book.setTitle("Novas Aventuras");
+		Book stored = Book.builder().id(1).title("As Aventuras").author("Fulano").isbn("123").version(3L).build();
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(stored));
+		Mockito.when(repository.saveAndFlush(stored)).thenAnswer(invocation -> {
+			Book saved = invocation.getArgument(0);
+			saved.setVersion(saved.getVersion() + 1);
+			return saved;
+		});
+
+		Optional<Book> updatedBook = service.updateById(book);
+
+		assertThat(updatedBook).isPresent();
+		assertThat(updatedBook.get().getTitle()).isEqualTo("Novas Aventuras");
+		assertThat(updatedBook.get().getVersion()).isEqualTo(4L);
+	}
+
+	@Test
+	@DisplayName("Deve recusar a atualização de uma versão antiga do livro")
+	public void updateByIdStaleVersionTest() {
+
+		Book book = createValidBook();
+		book.setId(1);
+		book.setVersion(3L);
+		Mockito.when(repository.findById(1)).thenReturn(Optional.of(
+				Book.builder().id(1).title("As Aventuras").author("Fulano").isbn("123").version(4L).build()));
+
+		Assertions.assertThatThrownBy(() -> service.updateById(book))
+				.isInstanceOf(ObjectOptimisticLockingFailureException.class);
+		Mockito.verify(repository, Mockito.never()).saveAndFlush(Mockito.any());
+	}
+
 	@Test
 	@DisplayName("Deve lançar um erro ao tentar atualizar um livro inexistente.")
 	public void updateInvalidBookTest() {
@@ -197,7 +297,272 @@ public class BookServiceTest {
 		assertThat(result.getPageable().getPageNumber()).isEqualTo(0);
 		assertThat(result.getPageable().getPageSize()).isEqualTo(10);
 	}
-	
-		
+
+	@Test
+	@DisplayName("Deve salvar um lote rejeitando isbn duplicado no lote e no banco")
+	public void saveAllTest() {
+
+		Book first = createValidBook();
+		Book sameIsbn = createValidBook();
+		Book existing = Book.builder().isbn("456").author("Fulano").title("Outras Aventuras").build();
+		Book other = Book.builder().isbn("789").author("Beltrano").title("Mais Aventuras").build();
+
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Arrays.asList("456"));
+
+		List<BookBatchResult> results = service.saveAll(Arrays.asList(first, sameIsbn, existing, other));
+
+		assertThat(results).hasSize(4);
+		assertThat(results.get(0).isCreated()).isTrue();
+		assertThat(results.get(1).isCreated()).isFalse();
+		assertThat(results.get(1).getError()).isEqualTo("Isbn Já cadastrado");
+		assertThat(results.get(2).isCreated()).isFalse();
+		assertThat(results.get(3).isCreated()).isTrue();
+
+		Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.never()).existsByIsbn(Mockito.anyString());
+		Mockito.verify(repository).saveAllAndFlush(Arrays.asList(first, other));
+	}
+
+	@Test
+	@DisplayName("Deve exportar todos os Livros")
+	public void exportTest() {
+
+		Book book = createValidBook();
+		Mockito.when(repository.streamAll()).thenReturn(Stream.of(book));
+
+		List<Book> exported = new ArrayList<>();
+		service.export(exported::add);
+
+		assertThat(exported).containsExactly(book);
+	}
+
+	@Test
+	@DisplayName("Deve retornar uma fatia de Livros indicando que existe a próxima")
+	public void scrollTest() {
+
+		Book book = createValidBook();
+		BookCursor cursor = BookCursor.first("id", Sort.Direction.ASC);
+		Mockito.when(repository.findAfter(book, cursor, 3)).thenReturn(Arrays.asList(book, book, book));
+
+		Slice<Book> result = service.scroll(book, cursor, 2);
+
+		assertThat(result.getContent()).hasSize(2);
+		assertThat(result.hasNext()).isTrue();
+	}
+
+	@Test
+	@DisplayName("Deve buscar pelo índice e carregar a página numa única consulta")
+	public void findIndexedTest() {
+
+		Book filter = Book.builder().title("aventuras").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Book first = createValidBook();
+		first.setId(1);
+		Book second = createValidBook();
+		second.setId(2);
+		second.setIsbn("456");
+
+		Mockito.when(searchIndex.canSearch(filter, pageRequest)).thenReturn(true);
+		Mockito.when(searchIndex.search(filter)).thenReturn(Arrays.asList(2, 1));
+		Mockito.when(repository.findAllById(Arrays.asList(2, 1))).thenReturn(Arrays.asList(first, second));
+
+		Page<Book> result = service.find(filter, pageRequest);
+
+		assertThat(result.getTotalElements()).isEqualTo(2);
+		assertThat(result.getContent()).containsExactly(second, first);
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+	}
+
+	@Test
+	@DisplayName("Deve buscar a página já como DTOs")
+	public void findDTOsTest() {
+
+		Book filter = Book.builder().author("Fulano").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Page<BookDTO> page = new PageImpl<>(Arrays.asList(BookDTO.builder().id(1).build()), pageRequest, 1);
+		Mockito.when(repository.findDTOs(filter, pageRequest)).thenReturn(page);
+
+		Page<BookDTO> result = service.findDTOs(filter, pageRequest);
+
+		assertThat(result).isSameAs(page);
+		Mockito.verify(repository, Mockito.never()).findAll(Mockito.any(Example.class), Mockito.any(PageRequest.class));
+	}
+
+	@Test
+	@DisplayName("Deve buscar os DTOs da página do índice na ordem do ranking")
+	public void findDTOsIndexedTest() {
+
+		Book filter = Book.builder().title("aventuras").build();
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		BookDTO first = BookDTO.builder().id(1).build();
+		BookDTO second = BookDTO.builder().id(2).build();
+
+		Mockito.when(searchIndex.canSearch(filter, pageRequest)).thenReturn(true);
+		Mockito.when(searchIndex.search(filter)).thenReturn(Arrays.asList(2, 1));
+		Mockito.when(repository.findDTOsById(Arrays.asList(2, 1))).thenReturn(Arrays.asList(first, second));
+
+		Page<BookDTO> result = service.findDTOs(filter, pageRequest);
+
+		assertThat(result.getTotalElements()).isEqualTo(2);
+		assertThat(result.getContent()).containsExactly(second, first);
+	}
+
+	@Test
+	@DisplayName("Não deve consultar o banco por isbns que o filtro nunca viu")
+	public void saveAllSkipsLookupForUnknownIsbnsTest() {
+
+		Book book = createValidBook();
+		Mockito.when(isbnFilter.mightContain(book.getIsbn())).thenReturn(false);
+
+		List<BookBatchResult> results = service.saveAll(Arrays.asList(book));
+
+		assertThat(results.get(0).isCreated()).isTrue();
+		Mockito.verify(repository, Mockito.never()).findExistingIsbns(Mockito.anyCollection());
+	}
+
+	@Test
+	@DisplayName("Deve rejeitar por item o isbn cadastrado por outra requisição durante o lote")
+	public void saveAllConcurrentDuplicateTest() {
+
+		Book book = createValidBook();
+		Book racing = Book.builder().isbn("456").author("Fulano").title("Outras Aventuras").build();
+		Mockito.when(isbnFilter.mightContain(Mockito.anyString())).thenReturn(false);
+		Mockito.when(repository.findExistingIsbns(Mockito.anyCollection())).thenReturn(Arrays.asList("456"));
+		Mockito.when(repository.saveAllAndFlush(Mockito.anyList()))
+				.thenThrow(new DataIntegrityViolationException("x",
+						new ConstraintViolationException("dup", null, Book.ISBN_CONSTRAINT)))
+				.thenReturn(Arrays.asList(book));
+
+		List<BookBatchResult> results = service.saveAll(Arrays.asList(book, racing));
+
+		assertThat(results.get(0).isCreated()).isTrue();
+		assertThat(results.get(1).isCreated()).isFalse();
+		assertThat(results.get(1).getError()).isEqualTo("Isbn Já cadastrado");
+		// the filter said nothing was there, so only the retry asks the database
+		Mockito.verify(repository, Mockito.times(1)).findExistingIsbns(Mockito.anyCollection());
+		Mockito.verify(repository, Mockito.times(2)).saveAllAndFlush(Mockito.anyList());
+	}
+
+	@Test
+	@DisplayName("Buscas simultâneas do mesmo Livro devem compartilhar uma consulta")
+	public void concurrentGetByIdIsCoalescedTest() throws Exception {
+
+		int threads = 8;
+		CountDownLatch release = new CountDownLatch(1);
+		Book book = createValidBook();
+		book.setId(1);
+		Mockito.when(repository.findById(1)).thenAnswer(invocation -> {
+			release.await(10, TimeUnit.SECONDS);
+			return Optional.of(book);
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Optional<Book>>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(() -> service.getById(1)));
+		}
+		// hold the query until every other caller is waiting on it
+		while (registry.get(SingleFlight.CALLS).tag("name", "getById").tag("result", "coalesced").counter()
+				.count() < threads - 1) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		List<Book> books = new ArrayList<>();
+		for (Future<Optional<Book>> result : results) {
+			assertThat(result.get(30, TimeUnit.SECONDS)).contains(book);
+			books.add(result.get().get());
+		}
+		executor.shutdown();
+		// only the leader gets the loaded entity, the others a detached copy each
+		assertThat(books.stream().filter(found -> found == book)).hasSize(1);
+		Set<Book> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		distinct.addAll(books);
+		assertThat(distinct).hasSize(threads);
+		Mockito.verify(repository, Mockito.times(1)).findById(1);
+	}
+
+	@Test
+	@DisplayName("Buscas com o mesmo filtro em outra caixa devem usar a mesma chave")
+	public void concurrentFindIsCoalescedTest() throws Exception {
+
+		PageRequest pageRequest = PageRequest.of(0, 10);
+		Page<BookDTO> page = new PageImpl<>(Arrays.asList(BookDTO.builder().id(1).build()), pageRequest, 1);
+		CountDownLatch leaderRunning = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Mockito.when(repository.findDTOs(Mockito.any(), Mockito.eq(pageRequest))).thenAnswer(invocation -> {
+			leaderRunning.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			return page;
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Future<Page<BookDTO>> leader = executor.submit(
+				() -> service.findDTOs(Book.builder().author("Fulano").build(), pageRequest));
+		leaderRunning.await(10, TimeUnit.SECONDS);
+		Future<Page<BookDTO>> follower = executor.submit(
+				() -> service.findDTOs(Book.builder().author("FULANO").build(), pageRequest));
+		while (registry.get(SingleFlight.CALLS).tag("name", "findDTOs").tag("result", "coalesced").counter()
+				.count() == 0) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		assertThat(leader.get(30, TimeUnit.SECONDS)).isSameAs(page);
+		Page<BookDTO> shared = follower.get(30, TimeUnit.SECONDS);
+		assertThat(shared).isNotSameAs(page);
+		assertThat(shared.getContent().get(0)).isNotSameAs(page.getContent().get(0));
+		assertThat(shared.getContent().get(0).getId()).isEqualTo(1);
+		assertThat(shared.getTotalElements()).isEqualTo(1);
+		executor.shutdown();
+		Mockito.verify(repository, Mockito.times(1)).findDTOs(Mockito.any(), Mockito.eq(pageRequest));
+	}
+
+	@Test
+	@DisplayName("Deve buscar vários Livros com uma consulta, usando o cache e mantendo a ordem")
+	public void getByIdsTest() {
+
+		Book cached = Book.builder().id(1).title("Em cache").build();
+		Book stored = Book.builder().id(3).title("No banco").build();
+		cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).put(1, cached);
+		Mockito.when(repository.findAllById(Arrays.asList(3, 2))).thenReturn(Arrays.asList(stored));
+
+		List<Optional<Book>> books = service.getByIds(Arrays.asList(3, 1, 2, 3));
+
+		assertThat(books).containsExactly(Optional.of(stored), Optional.of(cached), Optional.empty(),
+				Optional.of(stored));
+		Mockito.verify(repository, Mockito.times(1)).findAllById(Mockito.anyIterable());
+		assertThat(cacheManager.getCache(BookServiceImpl.BOOKS_CACHE).get(3, Book.class)).isSameAs(stored);
+	}
+
+	@Test
+	@DisplayName("Deve invalidar o cache do Livro alterado ou excluído só depois do commit")
+	public void evictAfterCommitTest() {
+
+		Book book = createValidBook();
+		book.setId(1);
+		Mockito.when(repository.findById(Mockito.anyInt())).thenReturn(Optional.of(createValidBook()));
+		Mockito.when(repository.saveAndFlush(Mockito.any(Book.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		org.springframework.cache.Cache cache = cacheManager.getCache(BookServiceImpl.BOOKS_CACHE);
+		cache.put(1, Optional.of(book));
+		cache.put(2, Optional.of(book));
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			service.updateById(book);
+			service.deleteById(2);
+
+			// not committed yet: other readers still see the committed rows
+			assertThat(cache.get(1)).isNotNull();
+			assertThat(cache.get(2)).isNotNull();
+
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		assertThat(cache.get(1)).isNull();
+		assertThat(cache.get(2)).isNull();
+	}
 
 }
@@ -0,0 +1,219 @@
+package br.dev.jstec.library_api.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import br.dev.jstec.library_api.api.exceptions.BusinessException;
+import br.dev.jstec.library_api.api.model.BookBatchResult;
+import br.dev.jstec.library_api.api.model.BookCursor;
+import br.dev.jstec.library_api.api.model.BookStats;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookShardRepository;
+import br.dev.jstec.library_api.model.repository.BookShards;
+import br.dev.jstec.library_api.service.impl.ShardedBookServiceImpl;
+
+public class ShardedBookServiceTest {
+
+	static final int SHARDS = 3;
+
+	static int run;
+
+	BookShards shards;
+
+	ExecutorService executor = Executors.newFixedThreadPool(SHARDS);
+
+	ShardedBookServiceImpl service;
+
+	@BeforeEach
+	public void setUp() {
+		run++;
+		List<BookShardRepository> repositories = new ArrayList<>();
+		for (int shard = 0; shard < SHARDS; shard++) {
+			DriverManagerDataSource dataSource = new DriverManagerDataSource(
+					"jdbc:h2:mem:sharded-test-" + run + "-" + shard + ";DB_CLOSE_DELAY=-1", "sa", "");
+			BookShardRepository repository = new BookShardRepository(shard, SHARDS, dataSource);
+			repository.createSchema();
+			repositories.add(repository);
+		}
+		shards = new BookShards(repositories);
+		service = new ShardedBookServiceImpl(shards, executor, Mockito.mock(ApplicationEventPublisher.class),
+				new ConcurrentMapCacheManager(), new LibraryProperties());
+
+		for (int i = 1; i <= 12; i++) {
+			service.save(Book.builder().title("Title " + (char) ('a' + i)).author("Author " + i % 2)
+					.isbn("isbn-" + i).build());
+		}
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	@DisplayName("Deve guardar cada Livro na partição do isbn, com o número dela no id")
+	public void saveRoutesByIsbnTest() {
+
+		Book book = service.save(Book.builder().title("As Aventuras").author("Fulano").isbn("123").build());
+
+		assertThat(shards.byId(book.getId())).isSameAs(shards.byIsbn("123"));
+		assertThat(service.getById(book.getId())).hasValueSatisfying(found ->
+				assertThat(found.getTitle()).isEqualTo("As Aventuras"));
+		Assertions.assertThatThrownBy(() -> service.save(Book.builder().title("Outro").author("Fulano")
+				.isbn("123").build()))
+				.isInstanceOf(BusinessException.class)
+				.hasMessage("Isbn Já cadastrado");
+	}
+
+	@Test
+	@DisplayName("Deve juntar as páginas ordenadas de todas as partições")
+	public void findMergesShardsTest() {
+
+		Page<Book> page = service.find(Book.builder().author("author 1").build(),
+				PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "title")));
+
+		assertThat(page.getTotalElements()).isEqualTo(6);
+		assertThat(page.getContent()).extracting(Book::getTitle).containsExactly("Title h", "Title f");
+	}
+
+	@Test
+	@DisplayName("Deve recusar páginas além do limite em vez de ler tudo de cada partição")
+	public void findRejectsDeepPagesTest() {
+
+		int maxOffset = new LibraryProperties().getSharding().getMaxOffset();
+
+		assertThat(service.find(new Book(), PageRequest.of(maxOffset / 100 - 1, 100))).isEmpty();
+		Assertions.assertThatThrownBy(() -> service.find(new Book(), PageRequest.of(maxOffset / 100, 100)))
+				.isInstanceOf(BusinessException.class)
+				.hasMessageContaining("/api/books/scroll");
+	}
+
+	@Test
+	@DisplayName("Deve rolar por todas as partições sem repetir nem pular Livros")
+	public void scrollMergesShardsTest() {
+
+		List<String> titles = new ArrayList<>();
+		BookCursor cursor = BookCursor.first("title", Sort.Direction.ASC);
+		Slice<Book> slice;
+		do {
+			slice = service.scroll(new Book(), cursor, 5);
+			slice.forEach(book -> titles.add(book.getTitle()));
+			if (slice.hasContent()) {
+				cursor = cursor.next(slice.getContent().get(slice.getNumberOfElements() - 1));
+			}
+		} while (slice.hasNext());
+
+		assertThat(titles).hasSize(12).isSorted();
+	}
+
+	@Test
+	@DisplayName("Deve somar as contagens de todas as partições")
+	public void statsMergesShardsTest() {
+
+		BookStats stats = service.stats(new Book(), 1, 6);
+
+		assertThat(stats.getTotal()).isEqualTo(12);
+		assertThat(stats.getAuthors()).hasSize(1);
+		assertThat(stats.getAuthors().get(0).getCount()).isEqualTo(6);
+		assertThat(stats.getIsbnPrefixes().get(0).getValue()).isEqualTo("isbn-1");
+		assertThat(stats.getIsbnPrefixes().get(0).getCount()).isEqualTo(4);
+	}
+
+	@Test
+	@DisplayName("Deve recusar duplicados do lote e do banco em cada partição")
+	public void saveAllTest() {
+
+		List<BookBatchResult> results = service.saveAll(Arrays.asList(
+				Book.builder().title("Novo").author("Fulano").isbn("novo").build(),
+				Book.builder().title("Repetido").author("Fulano").isbn("isbn-1").build(),
+				Book.builder().title("Novo de novo").author("Fulano").isbn("novo").build()));
+
+		assertThat(results).extracting(BookBatchResult::isCreated).containsExactly(true, false, false);
+		assertThat(service.find(new Book(), PageRequest.of(0, 20)).getTotalElements()).isEqualTo(13);
+	}
+
+	@Test
+	@DisplayName("Deve recusar só o item cujo isbn foi cadastrado por outra requisição durante o lote")
+	public void saveAllConcurrentDuplicateTest() {
+
+		// the lookup misses "isbn-1" once, as if it had been inserted right after it
+		BookShardRepository racing = Mockito.spy(shards.byIsbn("isbn-1"));
+		Mockito.doReturn(new ArrayList<String>()).doCallRealMethod()
+				.when(racing).findExistingIsbns(Mockito.anyCollection());
+		List<BookShardRepository> repositories = new ArrayList<>(shards.all());
+		repositories.set(racing.getShard(), racing);
+		service = new ShardedBookServiceImpl(new BookShards(repositories), executor,
+				Mockito.mock(ApplicationEventPublisher.class), new ConcurrentMapCacheManager(), new LibraryProperties());
+
+		List<BookBatchResult> results = service.saveAll(Arrays.asList(
+				Book.builder().title("Repetido").author("Fulano").isbn("isbn-1").build(),
+				Book.builder().title("Novo").author("Fulano").isbn("novo").build()));
+
+		assertThat(results).extracting(BookBatchResult::isCreated).containsExactly(false, true);
+		assertThat(results.get(0).getError()).isEqualTo("Isbn Já cadastrado");
+		assertThat(service.find(new Book(), PageRequest.of(0, 20)).getTotalElements()).isEqualTo(13);
+	}
+
+	@Test
+	@DisplayName("Deve mover o Livro para a partição do novo isbn, com um novo id")
+	public void isbnChangeMovesShardTest() {
+
+		Book book = service.find(Book.builder().isbn("isbn-1").build(), PageRequest.of(0, 1)).getContent().get(0);
+		Integer oldId = book.getId();
+		String otherShardIsbn = isbnOfAnotherShard(book);
+		book.setIsbn(otherShardIsbn);
+
+		Book moved = service.updateById(book).get();
+
+		assertThat(shards.byId(moved.getId())).isSameAs(shards.byIsbn(otherShardIsbn));
+		assertThat(moved.getVersion()).isEqualTo(book.getVersion() + 1);
+		assertThat(service.getById(oldId)).isEmpty();
+		assertThat(service.getById(moved.getId())).hasValueSatisfying(found ->
+				assertThat(found.getIsbn()).isEqualTo(otherShardIsbn));
+		assertThat(service.find(new Book(), PageRequest.of(0, 20)).getTotalElements()).isEqualTo(12);
+	}
+
+	@Test
+	@DisplayName("Não deve mover um Livro alterado por outra requisição")
+	public void staleMoveTest() {
+
+		Book book = service.find(Book.builder().isbn("isbn-1").build(), PageRequest.of(0, 1)).getContent().get(0);
+		String otherShardIsbn = isbnOfAnotherShard(book);
+		book.setIsbn(otherShardIsbn);
+		book.setVersion(book.getVersion() - 1);
+
+		Assertions.assertThatThrownBy(() -> service.updateById(book))
+				.isInstanceOf(ObjectOptimisticLockingFailureException.class);
+		assertThat(service.find(new Book(), PageRequest.of(0, 20)).getTotalElements()).isEqualTo(12);
+	}
+
+	private String isbnOfAnotherShard(Book book) {
+		String isbn = "outro-0";
+		for (int i = 1; shards.byIsbn(isbn) == shards.byId(book.getId()); i++) {
+			isbn = "outro-" + i;
+		}
+		return isbn;
+	}
+
+}
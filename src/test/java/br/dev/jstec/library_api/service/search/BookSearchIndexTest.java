@@ -0,0 +1,103 @@
+package br.dev.jstec.library_api.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+public class BookSearchIndexTest {
+
+	BookRepository repository = Mockito.mock(BookRepository.class);
+
+	PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+	BookSearchIndex index;
+
+	@BeforeEach
+	public void setUp() {
+		Mockito.when(transactionManager.getTransaction(Mockito.any())).thenReturn(new SimpleTransactionStatus());
+		Mockito.when(repository.streamAll()).thenReturn(Stream.of(
+				book(1, "As Aventuras de Tom Sawyer", "Mark Twain", "978-85-01"),
+				book(2, "Aventura", "Júlio Verne", "978-85-02"),
+				book(3, "Vinte Mil Léguas Submarinas", "Júlio Verne", "978-85-03")));
+
+		LibraryProperties properties = new LibraryProperties();
+		properties.getSearch().setMode(LibraryProperties.SearchMode.INDEX);
+		index = new BookSearchIndex(repository, transactionManager, properties);
+		index.rebuild();
+	}
+
+	@Test
+	@DisplayName("Must find books by token prefix ranking whole words first")
+	public void prefixSearchTest() {
+		assertThat(index.search(Book.builder().title("aventura").build())).containsExactly(2, 1);
+	}
+
+	@Test
+	@DisplayName("Must match every token ignoring case and accents")
+	public void tokensTest() {
+		assertThat(index.search(Book.builder().author("JULIO ver").build())).containsExactly(2, 3);
+		assertThat(index.search(Book.builder().author("julio").title("leguas").build())).containsExactly(3);
+		assertThat(index.search(Book.builder().isbn("9788502").build())).containsExactly(2);
+	}
+
+	@Test
+	@DisplayName("Must lower case tokens the same way whatever the default locale")
+	public void localeTest() {
+		Locale defaultLocale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			assertThat(BookSearchIndex.tokenize("VINTE MIL")).containsExactly("vinte", "mil");
+			assertThat(BookSearchIndex.isbnTokens("ISBN-1")).containsExactly("isbn1");
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	@Test
+	@DisplayName("Must follow saved, updated and deleted books")
+	public void syncTest() {
+		index.onBookChanged(BookChangedEvent.saved(book(4, "Aventuras na Lua", "Júlio Verne", "978-85-04")));
+		index.onBookChanged(BookChangedEvent.updated(book(2, "Volta ao Mundo", "Júlio Verne", "978-85-02")));
+		index.onBookChanged(BookChangedEvent.deleted(book(1, null, null, null)));
+
+		assertThat(index.search(Book.builder().title("aventura").build())).containsExactly(4);
+		assertThat(index.search(Book.builder().title("mundo").build())).containsExactly(2);
+	}
+
+	@Test
+	@DisplayName("Must leave sorted pages, id filters and the example mode to the database")
+	public void canSearchTest() {
+		Book filter = Book.builder().title("aventura").build();
+
+		assertThat(index.canSearch(filter, PageRequest.of(0, 10))).isTrue();
+		assertThat(index.canSearch(filter, PageRequest.of(0, 10, Sort.by("title")))).isFalse();
+		assertThat(index.canSearch(Book.builder().id(1).build(), PageRequest.of(0, 10))).isFalse();
+		assertThat(index.canSearch(new Book(), PageRequest.of(0, 10))).isFalse();
+
+		LibraryProperties properties = new LibraryProperties();
+		properties.getSearch().setMode(LibraryProperties.SearchMode.EXAMPLE);
+		BookSearchIndex disabled = new BookSearchIndex(repository, transactionManager, properties);
+		disabled.rebuild();
+		assertThat(disabled.canSearch(filter, PageRequest.of(0, 10))).isFalse();
+	}
+
+	private Book book(Integer id, String title, String author, String isbn) {
+		return Book.builder().id(id).title(title).author(author).isbn(isbn).build();
+	}
+
+}
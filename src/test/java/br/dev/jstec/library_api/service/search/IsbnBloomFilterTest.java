@@ -0,0 +1,114 @@
+package br.dev.jstec.library_api.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import br.dev.jstec.library_api.api.model.BookChangedEvent;
+import br.dev.jstec.library_api.api.model.entity.Book;
+import br.dev.jstec.library_api.config.LibraryProperties;
+import br.dev.jstec.library_api.model.repository.BookRepository;
+
+public class IsbnBloomFilterTest {
+
+	BookRepository repository = Mockito.mock(BookRepository.class);
+
+	PlatformTransactionManager transactionManager = Mockito.mock(PlatformTransactionManager.class);
+
+	SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	LibraryProperties properties = new LibraryProperties();
+
+	IsbnBloomFilter filter;
+
+	@BeforeEach
+	public void setUp() {
+		properties.getIsbnFilter().setExpectedInsertions(10_000);
+		Mockito.when(transactionManager.getTransaction(Mockito.any())).thenReturn(new SimpleTransactionStatus());
+		Mockito.when(repository.count()).thenReturn(2L);
+		Mockito.when(repository.streamIsbns()).thenReturn(Stream.of("978-85-01", "978-85-02"));
+
+		filter = new IsbnBloomFilter(repository, transactionManager, properties, registry);
+	}
+
+	@Test
+	@DisplayName("Must answer maybe for everything until it is built")
+	public void notBuiltTest() {
+		assertThat(filter.mightContain("978-85-99")).isTrue();
+		assertThat(filter.sizeInBytes()).isZero();
+	}
+
+	@Test
+	@DisplayName("Must never answer absent for a registered isbn")
+	public void noFalseNegativesTest() {
+		filter.rebuild();
+
+		assertThat(filter.mightContain("978-85-01")).isTrue();
+		assertThat(filter.mightContain("978-85-02")).isTrue();
+		assertThat(filter.insertions()).isEqualTo(2);
+		assertThat(registry.get("library.isbn.filter.checks").tag("result", "maybe").counter().count()).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Must keep the false positive rate near the configured one")
+	public void falsePositiveRateTest() {
+		filter.rebuild();
+		IntStream.range(0, 10_000).forEach(i -> filter.onBookChanged(BookChangedEvent.saved(isbn("A" + i))));
+
+		long falsePositives = IntStream.range(0, 10_000).filter(i -> filter.mightContain("B" + i)).count();
+
+		assertThat(falsePositives).isLessThan(300);
+		assertThat(filter.expectedFalsePositiveRate()).isLessThan(0.02);
+	}
+
+	@Test
+	@DisplayName("Must follow saved books and keep deleted ones until the next rebuild")
+	public void syncTest() {
+		filter.rebuild();
+		filter.onBookChanged(BookChangedEvent.saved(isbn("978-85-03")));
+		filter.onBookChanged(BookChangedEvent.deleted(isbn("978-85-01")));
+
+		assertThat(filter.mightContain("978-85-03")).isTrue();
+		assertThat(filter.mightContain("978-85-01")).isTrue();
+		assertThat(registry.get("library.isbn.filter.deletions").gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	@DisplayName("Must keep isbns saved while a rebuild reads the table")
+	public void putDuringRebuildTest() {
+		Mockito.when(repository.streamIsbns()).thenAnswer(invocation -> {
+			filter.onBookChanged(BookChangedEvent.saved(isbn("978-85-03")));
+			return Stream.of("978-85-01");
+		});
+
+		filter.rebuild();
+
+		assertThat(filter.mightContain("978-85-03")).isTrue();
+		assertThat(filter.insertions()).isEqualTo(2);
+	}
+
+	@Test
+	@DisplayName("Must answer maybe for everything when disabled")
+	public void disabledTest() {
+		properties.getIsbnFilter().setEnabled(false);
+		filter.rebuild();
+
+		assertThat(filter.mightContain("978-85-99")).isTrue();
+		Mockito.verify(repository, Mockito.never()).streamIsbns();
+	}
+
+	private Book isbn(String isbn) {
+		return Book.builder().isbn(isbn).build();
+	}
+
+}